@@ -18,13 +18,12 @@ public class SFTPConfig {
     private final SFTPSessionManager sessionManager;
     
     /**
-     * Clean up idle SFTP sessions every 30 minutes
+     * Evict idle and dead SFTP sessions (every minute by default)
      */
-    @Scheduled(fixedRate = 1800000) // 30 minutes
+    @Scheduled(fixedRateString = "${sftp.session.eviction-interval-ms:60000}")
     public void cleanupIdleSessions() {
         log.debug("Running scheduled SFTP session cleanup");
-        // This could be enhanced to clean up sessions idle for more than X minutes
-        // For now, we'll let the session manager handle connection validation
+        sessionManager.evictIdleSessions();
     }
     
     /**
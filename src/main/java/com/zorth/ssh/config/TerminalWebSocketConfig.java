@@ -0,0 +1,33 @@
+package com.zorth.ssh.config;
+
+import com.zorth.ssh.websocket.BinaryTerminalWebSocketHandler;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.NonNull;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+/**
+ * Plain (non-STOMP) WebSocket endpoints. Lives next to the STOMP broker set up in WebSocketConfig.
+ */
+@Slf4j
+@Configuration
+@EnableWebSocket
+@RequiredArgsConstructor
+public class TerminalWebSocketConfig implements WebSocketConfigurer {
+
+    @Value("${frontend.url}")
+    private String frontendUrl;
+
+    private final BinaryTerminalWebSocketHandler binaryTerminalWebSocketHandler;
+
+    @Override
+    public void registerWebSocketHandlers(@NonNull WebSocketHandlerRegistry registry) {
+        registry.addHandler(binaryTerminalWebSocketHandler, "/ws/terminal")
+                .setAllowedOriginPatterns(frontendUrl, "http://localhost:3000", "http://127.0.0.1:3000");
+        log.info("Binary terminal WebSocket endpoint registered at /ws/terminal");
+    }
+}
@@ -0,0 +1,134 @@
+package com.zorth.ssh.controller;
+
+import org.springframework.http.HttpRange;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Range and If-Range handling for file downloads (RFC 7233).
+ * Requested ranges are sorted and overlapping or adjacent ones merged, so a request
+ * can never make the server read or send a byte twice. A request with too many ranges,
+ * or whose ranges add up to the whole file, is answered with the full entity instead.
+ */
+final class DownloadRanges {
+
+    static final int MAX_RANGES = 16;
+
+    /**
+     * One satisfiable range, both ends inclusive
+     */
+    record Range(long start, long end) {
+        long length() {
+            return end - start + 1;
+        }
+    }
+
+    /**
+     * What to send: the full entity (no ranges), the given ranges, or a 416
+     */
+    record Plan(boolean unsatisfiable, List<Range> ranges) {
+        static final Plan FULL = new Plan(false, List.of());
+        static final Plan UNSATISFIABLE = new Plan(true, List.of());
+
+        boolean isFull() {
+            return !unsatisfiable && ranges.isEmpty();
+        }
+
+        long totalLength() {
+            long total = 0;
+            for (Range range : ranges) {
+                total += range.length();
+            }
+            return total;
+        }
+    }
+
+    private DownloadRanges() {
+    }
+
+    static Plan plan(String rangeHeader, String ifRange, long fileSize, long mtimeSeconds) {
+        // A stale If-Range validator means the client must get the whole new file
+        if (rangeHeader == null || !ifRangeMatches(ifRange, mtimeSeconds)) {
+            return Plan.FULL;
+        }
+        List<HttpRange> parsed;
+        try {
+            parsed = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            // A malformed Range header is ignored (RFC 7233 section 3.1)
+            return Plan.FULL;
+        }
+        if (parsed.isEmpty() || parsed.size() > MAX_RANGES) {
+            return Plan.FULL;
+        }
+
+        List<Range> satisfiable = new ArrayList<>(parsed.size());
+        for (HttpRange range : parsed) {
+            long start;
+            try {
+                start = range.getRangeStart(fileSize);
+            } catch (IllegalArgumentException e) {
+                continue; // starts past the end of the file
+            }
+            long end = range.getRangeEnd(fileSize);
+            if (start <= end) {
+                satisfiable.add(new Range(start, end));
+            }
+        }
+        if (satisfiable.isEmpty()) {
+            return Plan.UNSATISFIABLE;
+        }
+
+        List<Range> merged = merge(satisfiable);
+        if (merged.size() == 1 && merged.get(0).length() >= fileSize) {
+            return Plan.FULL;
+        }
+        return new Plan(false, merged);
+    }
+
+    /**
+     * Sorts ranges by start and joins the ones that overlap or touch
+     */
+    static List<Range> merge(List<Range> ranges) {
+        List<Range> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(Range::start));
+        List<Range> merged = new ArrayList<>(sorted.size());
+        Range current = sorted.get(0);
+        for (int i = 1; i < sorted.size(); i++) {
+            Range next = sorted.get(i);
+            if (next.start() <= current.end() + 1) {
+                current = new Range(current.start(), Math.max(current.end(), next.end()));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * True if ranges may be served: no If-Range, or an HTTP-date equal to the file's
+     * mtime. Entity tags never match because ours are weak (RFC 7233 section 3.2).
+     */
+    static boolean ifRangeMatches(String ifRange, long mtimeSeconds) {
+        if (ifRange == null) {
+            return true;
+        }
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/") || mtimeSeconds <= 0) {
+            return false;
+        }
+        try {
+            long date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return date == mtimeSeconds * 1000L;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+}
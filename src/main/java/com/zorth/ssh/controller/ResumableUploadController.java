@@ -0,0 +1,132 @@
+package com.zorth.ssh.controller;
+
+import com.jcraft.jsch.SftpException;
+import com.zorth.ssh.dto.ResumableUploadStatus;
+import com.zorth.ssh.dto.SFTPResponse;
+import com.zorth.ssh.service.ResumableUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Resumable chunked uploads: initiate, PUT chunks at offsets, query received ranges, commit
+ */
+@Slf4j
+@RestController
+@RequestMapping("/sftp")
+@RequiredArgsConstructor
+public class ResumableUploadController {
+
+    private final ResumableUploadService resumableUploadService;
+
+    /**
+     * Start a resumable upload and create its remote .part file
+     */
+    @PostMapping("/{profileId}/uploads")
+    public ResponseEntity<SFTPResponse<ResumableUploadStatus>> initiate(
+            @PathVariable Long profileId,
+            @RequestParam String path,
+            @RequestParam String fileName,
+            @RequestParam long totalBytes,
+            @RequestParam(required = false) String transferId) {
+        try {
+            ResumableUploadStatus status = resumableUploadService.initiate(profileId, path, fileName, totalBytes, transferId);
+            return ResponseEntity.ok(SFTPResponse.success("Upload initiated", status));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(SFTPResponse.error(e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(SFTPResponse.error(e.getMessage()));
+        } catch (SftpException e) {
+            log.error("Failed to initiate upload to {} for profile {}: {}", path, profileId, e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error("Failed to initiate upload: " + e.getMessage()));
+        } catch (Exception e) {
+            log.error("Unexpected error initiating upload for profile {}: {}", profileId, e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Write one chunk (raw request body) at the given byte offset
+     */
+    @PutMapping(value = "/uploads/{transferId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<SFTPResponse<ResumableUploadStatus>> writeChunk(
+            @PathVariable String transferId,
+            @RequestParam long offset,
+            @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
+            HttpServletRequest request) {
+        try {
+            ResumableUploadStatus status = resumableUploadService.writeChunk(transferId, offset, contentLength, request.getInputStream());
+            return ResponseEntity.ok(SFTPResponse.success("Chunk received", status));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().body(SFTPResponse.error(e.getMessage()));
+        } catch (SftpException e) {
+            log.error("Failed to write chunk at {} for upload {}: {}", offset, transferId, e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error("Failed to write chunk: " + e.getMessage()));
+        } catch (Exception e) {
+            log.error("Unexpected error writing chunk for upload {}: {}", transferId, e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Report which ranges have been received and which are still missing
+     */
+    @GetMapping("/uploads/{transferId}")
+    public ResponseEntity<SFTPResponse<ResumableUploadStatus>> getStatus(@PathVariable String transferId) {
+        try {
+            return ResponseEntity.ok(SFTPResponse.success(resumableUploadService.getStatus(transferId)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(SFTPResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error getting status for upload {}: {}", transferId, e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Move the completed .part file to its final name
+     */
+    @PostMapping("/uploads/{transferId}/commit")
+    public ResponseEntity<SFTPResponse<ResumableUploadStatus>> commit(@PathVariable String transferId) {
+        try {
+            return ResponseEntity.ok(SFTPResponse.success("Upload committed", resumableUploadService.commit(transferId)));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().body(SFTPResponse.error(e.getMessage()));
+        } catch (SftpException e) {
+            log.error("Failed to commit upload {}: {}", transferId, e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error("Failed to commit upload: " + e.getMessage()));
+        } catch (Exception e) {
+            log.error("Unexpected error committing upload {}: {}", transferId, e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Abort the upload and delete its .part file
+     */
+    @DeleteMapping("/uploads/{transferId}")
+    public ResponseEntity<SFTPResponse<String>> abort(@PathVariable String transferId) {
+        try {
+            resumableUploadService.abort(transferId);
+            return ResponseEntity.ok(SFTPResponse.success("Upload aborted", transferId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(SFTPResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Unexpected error aborting upload {}: {}", transferId, e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+}
@@ -1,27 +1,48 @@
 package com.zorth.ssh.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.SftpException;
 import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
 import com.zorth.ssh.dto.SFTPFileInfo;
+import com.zorth.ssh.dto.SFTPFilePage;
+import com.zorth.ssh.dto.SFTPPoolStats;
 import com.zorth.ssh.dto.SFTPResponse;
+import com.zorth.ssh.dto.SFTPTransferTuning;
 import com.zorth.ssh.dto.TransferProgress;
+import com.zorth.ssh.entity.SSHProfile;
+import com.zorth.ssh.service.SFTPArchiveService;
+import com.zorth.ssh.service.SFTPDirectoryListingService;
+import com.zorth.ssh.service.SFTPServerTransferService;
 import com.zorth.ssh.service.SFTPService;
+import com.zorth.ssh.service.SFTPTransferTuner;
+import com.zorth.ssh.service.SFTPTreeOperationService;
+import com.zorth.ssh.service.SSHProfileService;
+import com.zorth.ssh.service.TransferBufferPool;
+import com.zorth.ssh.service.TransferCancelledException;
 import com.zorth.ssh.service.TransferProgressTracker;
+import com.zorth.ssh.service.TransferScheduler;
 import com.zorth.ssh.service.SFTPSessionManager;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.OutputStream;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
 
 @Slf4j
 @RestController
@@ -32,6 +53,22 @@ public class SFTPController {
     private final SFTPService sftpService;
     private final TransferProgressTracker progressTracker;
     private final SFTPSessionManager sessionManager;
+    private final SFTPDirectoryListingService directoryListingService;
+    private final SFTPArchiveService archiveService;
+    private final SFTPTreeOperationService treeOperationService;
+    private final SFTPServerTransferService serverTransferService;
+    private final TransferScheduler transferScheduler;
+    private final SFTPTransferTuner transferTuner;
+    private final TransferBufferPool bufferPool;
+    private final SSHProfileService sshProfileService;
+    private final ObjectMapper objectMapper;
+
+    private static final int LISTING_FLUSH_INTERVAL = 256;
+
+    /**
+     * Carries the scheduler's ID for a browser download, so the client can cancel or limit it
+     */
+    public static final String TRANSFER_ID_HEADER = "X-Transfer-Id";
 
     /**
      * Establish SFTP connection
@@ -74,39 +111,236 @@ public class SFTPController {
         }
     }
 
+    /**
+     * List one page of a (possibly huge) directory, sorted server-side
+     * Pass the returned nextCursor to fetch the following page
+     */
+    @GetMapping("/{profileId}/list/page")
+    public ResponseEntity<SFTPResponse<SFTPFilePage>> listFilesPage(
+            @PathVariable Long profileId,
+            @RequestParam(defaultValue = "/") String path,
+            @RequestParam(defaultValue = "500") int limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "name") String sort,
+            @RequestParam(defaultValue = "asc") String order,
+            @RequestParam(required = false) String filter) {
+        try {
+            String sessionId = sftpService.connect(profileId);
+            SFTPDirectoryListingService.SortField sortField =
+                    SFTPDirectoryListingService.SortField.valueOf(sort.toUpperCase());
+            SFTPFilePage page = directoryListingService.listPage(sessionId, path, limit, cursor,
+                    sortField, "desc".equalsIgnoreCase(order), filter);
+            return ResponseEntity.ok(SFTPResponse.success(page));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(SFTPResponse.error(e.getMessage()));
+        } catch (SftpException e) {
+            log.error("Failed to list files in path {} for profile {}: {}", path, profileId, e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error("Failed to list files: " + e.getMessage()));
+        } catch (Exception e) {
+            log.error("Unexpected error listing files for profile {}: {}", profileId, e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Stream a directory listing as NDJSON, one SFTPFileInfo per line in server order
+     * Entries are written as they are read from the server; a failure mid-stream ends
+     * the body with an {"error": ...} line
+     */
+    @GetMapping(value = "/{profileId}/list/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFiles(
+            @PathVariable Long profileId,
+            @RequestParam(defaultValue = "/") String path,
+            @RequestParam(required = false) String filter) {
+        try {
+            String sessionId = sftpService.connect(profileId);
+            StreamingResponseBody body = outputStream -> {
+                long[] written = new long[1];
+                try {
+                    directoryListingService.streamListing(sessionId, path, filter, file -> {
+                        outputStream.write(objectMapper.writeValueAsBytes(file));
+                        outputStream.write('\n');
+                        if (++written[0] % LISTING_FLUSH_INTERVAL == 0) {
+                            outputStream.flush();
+                        }
+                        return true;
+                    });
+                } catch (SftpException | JSchException e) {
+                    log.error("Failed to stream listing of {} for profile {}: {}", path, profileId, e.getMessage());
+                    outputStream.write(objectMapper.writeValueAsBytes(Map.of("error", "Failed to list files: " + e.getMessage())));
+                    outputStream.write('\n');
+                }
+                outputStream.flush();
+            };
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(body);
+        } catch (Exception e) {
+            log.error("Unexpected error streaming listing for profile {}: {}", profileId, e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     /**
      * Download a file from the remote server
+     * Supports single and multiple byte ranges (RFC 7233) so interrupted downloads can resume
+     * The transfer ID (client supplied or generated, returned in X-Transfer-Id) works with cancel and bandwidth limits
      */
     @GetMapping("/{profileId}/download")
     public ResponseEntity<StreamingResponseBody> downloadFile(
             @PathVariable Long profileId,
-            @RequestParam String path) {
+            @RequestParam String path,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @RequestParam(required = false) String transferId) {
+        String downloadId = transferId != null ? transferId : UUID.randomUUID().toString();
         try {
             String sessionId = sftpService.connect(profileId);
             String fileName = path.substring(path.lastIndexOf('/') + 1);
-            
+            SftpATTRS attrs = sftpService.statFile(sessionId, path);
+            long fileSize = attrs.getSize();
+            String eTag = buildWeakETag(attrs);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.CONTENT_DISPOSITION,
+                    "attachment; filename=\"" + URLEncoder.encode(fileName, StandardCharsets.UTF_8) + "\"");
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+            headers.set(TRANSFER_ID_HEADER, downloadId);
+            headers.setETag(eTag);
+            if (attrs.getMTime() > 0) {
+                headers.setLastModified(attrs.getMTime() * 1000L);
+            }
+
+            DownloadRanges.Plan plan = DownloadRanges.plan(rangeHeader, ifRange, fileSize, attrs.getMTime());
+            if (plan.unsatisfiable()) {
+                log.debug("Unsatisfiable range '{}' for {} ({} bytes)", rangeHeader, path, fileSize);
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize)
+                        .build();
+            }
+
+            if (plan.isFull()) {
+                StreamingResponseBody streamingResponseBody = outputStream -> {
+                    // Browser downloads are not progress tracked but still queue for a transfer slot
+                    try (TransferScheduler.Ticket ticket = transferScheduler.acquire(
+                            downloadId, List.of(sessionId), fileSize)) {
+                        sftpService.downloadRange(sessionId, path, 0, fileSize,
+                                transferScheduler.throttled(outputStream, ticket.getTransferId()));
+                    } catch (Exception e) {
+                        log.error("Error during file download: {}", e.getMessage());
+                        throw new RuntimeException("Download failed", e);
+                    }
+                };
+                return ResponseEntity.ok()
+                        .headers(headers)
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .contentLength(fileSize)
+                        .body(streamingResponseBody);
+            }
+
+            if (plan.ranges().size() == 1) {
+                long start = plan.ranges().get(0).start();
+                long end = plan.ranges().get(0).end();
+                StreamingResponseBody streamingResponseBody = outputStream -> {
+                    try (TransferScheduler.Ticket ticket = transferScheduler.acquire(
+                            downloadId, List.of(sessionId), end - start + 1)) {
+                        sftpService.downloadRange(sessionId, path, start, end - start + 1,
+                                transferScheduler.throttled(outputStream, ticket.getTransferId()));
+                    } catch (Exception e) {
+                        log.error("Error during ranged download of {}: {}", path, e.getMessage());
+                        throw new RuntimeException("Download failed", e);
+                    }
+                };
+                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                        .headers(headers)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileSize)
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .contentLength(end - start + 1)
+                        .body(streamingResponseBody);
+            }
+
+            String boundary = MimeTypeUtils.generateMultipartBoundaryString();
             StreamingResponseBody streamingResponseBody = outputStream -> {
-                try {
-                    // Use simple download without progress tracking for browser downloads
-                    sftpService.downloadFile(sessionId, path, outputStream);
+                try (TransferScheduler.Ticket ticket = transferScheduler.acquire(
+                        downloadId, List.of(sessionId), plan.totalLength())) {
+                    OutputStream throttledStream = transferScheduler.throttled(outputStream, ticket.getTransferId());
+                    for (DownloadRanges.Range range : plan.ranges()) {
+                        long start = range.start();
+                        long end = range.end();
+                        String partHeader = "\r\n--" + boundary + "\r\n"
+                                + HttpHeaders.CONTENT_TYPE + ": " + MediaType.APPLICATION_OCTET_STREAM_VALUE + "\r\n"
+                                + HttpHeaders.CONTENT_RANGE + ": bytes " + start + "-" + end + "/" + fileSize + "\r\n\r\n";
+                        outputStream.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+                        sftpService.downloadRange(sessionId, path, start, range.length(), throttledStream);
+                    }
+                    outputStream.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+                    outputStream.flush();
                 } catch (Exception e) {
-                    log.error("Error during file download: {}", e.getMessage());
+                    log.error("Error during multi-range download of {}: {}", path, e.getMessage());
                     throw new RuntimeException("Download failed", e);
                 }
             };
-
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, 
-                            "attachment; filename=\"" + URLEncoder.encode(fileName, StandardCharsets.UTF_8) + "\"")
-                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .headers(headers)
+                    .contentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary))
                     .body(streamingResponseBody);
-                    
+
         } catch (Exception e) {
             log.error("Failed to download file {} for profile {}: {}", path, profileId, e.getMessage());
             throw new RuntimeException("Failed to download file: " + e.getMessage());
         }
     }
 
+    /**
+     * Download a directory as a zip, tar or tar.gz archive streamed while the tree is read
+     * The transfer ID is handled as for file downloads
+     */
+    @GetMapping("/{profileId}/download-directory")
+    public ResponseEntity<StreamingResponseBody> downloadDirectory(
+            @PathVariable Long profileId,
+            @RequestParam String path,
+            @RequestParam(defaultValue = "zip") String format,
+            @RequestParam(required = false) String transferId) {
+        String downloadId = transferId != null ? transferId : UUID.randomUUID().toString();
+        try {
+            SFTPArchiveService.ArchiveFormat archiveFormat = SFTPArchiveService.ArchiveFormat.fromParameter(format);
+            String sessionId = sftpService.connect(profileId);
+            if (!sftpService.statFile(sessionId, path).isDir()) {
+                return ResponseEntity.badRequest().build();
+            }
+            String archiveName = archiveService.getArchiveFileName(path, archiveFormat);
+
+            StreamingResponseBody streamingResponseBody = outputStream -> {
+                try (TransferScheduler.Ticket ticket = transferScheduler.acquire(
+                        downloadId, List.of(sessionId), -1)) {
+                    archiveService.writeArchive(sessionId, path, archiveFormat,
+                            transferScheduler.throttled(outputStream, ticket.getTransferId()),
+                            ticket.getCancellation());
+                } catch (TransferCancelledException e) {
+                    log.info("Directory download {} of {} was cancelled", downloadId, path);
+                    throw e;
+                } catch (Exception e) {
+                    log.error("Error while archiving directory {}: {}", path, e.getMessage());
+                    throw new RuntimeException("Directory download failed", e);
+                }
+            };
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                            "attachment; filename=\"" + URLEncoder.encode(archiveName, StandardCharsets.UTF_8) + "\"")
+                    .header(TRANSFER_ID_HEADER, downloadId)
+                    .contentType(MediaType.parseMediaType(archiveFormat.getContentType()))
+                    .body(streamingResponseBody);
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected directory download of {}: {}", path, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Failed to download directory {} for profile {}: {}", path, profileId, e.getMessage());
+            throw new RuntimeException("Failed to download directory: " + e.getMessage());
+        }
+    }
+
     /**
      * Upload a file to the remote server with progress tracking
      */
@@ -145,6 +379,10 @@ public class SFTPController {
             );
 
             return ResponseEntity.ok(SFTPResponse.success("File upload started", result));
+        } catch (TransferCancelledException | CancellationException e) {
+            log.info("Upload {} to {} was cancelled", transferId, path);
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error("Upload cancelled"));
         } catch (SftpException e) {
             progressTracker.failTransfer(transferId, e.getMessage());
             log.error("Failed to upload file to {} for profile {}: {}", path, profileId, e.getMessage());
@@ -158,6 +396,70 @@ public class SFTPController {
         }
     }
 
+    /**
+     * Upload a file by streaming the raw request body straight into the SFTP write.
+     * Unlike the multipart endpoint nothing is buffered to memory or local disk first,
+     * and a slow remote side throttles the client through TCP backpressure.
+     */
+    @PutMapping(value = "/{profileId}/upload-stream", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<SFTPResponse<Map<String, String>>> uploadFileStream(
+            @PathVariable Long profileId,
+            @RequestParam String path,
+            @RequestParam String fileName,
+            @RequestParam(required = false) String transferId,
+            @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
+            HttpServletRequest request) {
+        String effectiveTransferId = transferId != null ? transferId : UUID.randomUUID().toString();
+        long totalBytes = contentLength != null ? contentLength : -1;
+        try {
+            log.info("Streaming upload request received - transferId: {}, fileName: {}, totalBytes: {}",
+                    effectiveTransferId, fileName, totalBytes);
+
+            progressTracker.startTransfer(effectiveTransferId, fileName, "UPLOAD", totalBytes);
+
+            String sessionId = sftpService.connect(profileId);
+            String remotePath = path.endsWith("/") ? path + fileName : path + "/" + fileName;
+
+            sftpService.uploadFileWithProgress(sessionId, remotePath, request.getInputStream(), totalBytes, effectiveTransferId);
+
+            Map<String, String> result = Map.of(
+                "transferId", effectiveTransferId,
+                "remotePath", remotePath,
+                "fileName", fileName
+            );
+
+            return ResponseEntity.ok(SFTPResponse.success("File uploaded", result));
+        } catch (TransferCancelledException | CancellationException e) {
+            log.info("Upload {} to {} was cancelled", effectiveTransferId, path);
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error("Upload cancelled"));
+        } catch (SftpException e) {
+            progressTracker.failTransfer(effectiveTransferId, e.getMessage());
+            log.error("Failed to stream upload to {} for profile {}: {}", path, profileId, e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error("Failed to upload file: " + e.getMessage()));
+        } catch (Exception e) {
+            progressTracker.failTransfer(effectiveTransferId, e.getMessage());
+            log.error("Unexpected error streaming upload for profile {}: {}", profileId, e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Get final progress of recently finished transfers, oldest first
+     */
+    @GetMapping("/progress/recent")
+    public ResponseEntity<SFTPResponse<List<TransferProgress>>> getRecentTransfers() {
+        try {
+            return ResponseEntity.ok(SFTPResponse.success(progressTracker.getRecentTransfers()));
+        } catch (Exception e) {
+            log.error("Error getting recent transfers: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
     /**
      * Get transfer progress for a specific transfer ID
      */
@@ -182,7 +484,7 @@ public class SFTPController {
     @PostMapping("/progress/{transferId}/cancel")
     public ResponseEntity<SFTPResponse<String>> cancelTransfer(@PathVariable String transferId) {
         try {
-            progressTracker.cancelTransfer(transferId);
+            transferScheduler.cancel(transferId);
             return ResponseEntity.ok(SFTPResponse.success("Transfer cancelled"));
         } catch (Exception e) {
             log.error("Error cancelling transfer {}: {}", transferId, e.getMessage());
@@ -191,6 +493,158 @@ public class SFTPController {
         }
     }
 
+    /**
+     * Get running and queued transfer counts from the transfer scheduler
+     */
+    @GetMapping("/scheduler/stats")
+    public ResponseEntity<SFTPResponse<Map<String, Object>>> getSchedulerStats() {
+        try {
+            return ResponseEntity.ok(SFTPResponse.success(transferScheduler.getStats()));
+        } catch (Exception e) {
+            log.error("Error getting transfer scheduler stats: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Get the global, per-host and per-transfer bandwidth limits in force
+     */
+    @GetMapping("/bandwidth")
+    public ResponseEntity<SFTPResponse<Map<String, Object>>> getBandwidthLimits() {
+        try {
+            return ResponseEntity.ok(SFTPResponse.success(transferScheduler.getBandwidthLimits()));
+        } catch (Exception e) {
+            log.error("Error getting bandwidth limits: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Set the combined bandwidth limit of all transfers (0 = unlimited)
+     */
+    @PutMapping("/bandwidth/global")
+    public ResponseEntity<SFTPResponse<Map<String, Object>>> setGlobalBandwidthLimit(@RequestParam long bytesPerSecond) {
+        try {
+            transferScheduler.setGlobalLimit(requireLimit(bytesPerSecond));
+            return ResponseEntity.ok(SFTPResponse.success("Bandwidth limit updated", transferScheduler.getBandwidthLimits()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error setting global bandwidth limit: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Set the default bandwidth limit for hosts without their own (0 = unlimited)
+     */
+    @PutMapping("/bandwidth/host-default")
+    public ResponseEntity<SFTPResponse<Map<String, Object>>> setDefaultHostBandwidthLimit(@RequestParam long bytesPerSecond) {
+        try {
+            transferScheduler.setDefaultHostLimit(requireLimit(bytesPerSecond));
+            return ResponseEntity.ok(SFTPResponse.success("Bandwidth limit updated", transferScheduler.getBandwidthLimits()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error setting default host bandwidth limit: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Set the bandwidth limit of the host behind a profile; omit bytesPerSecond to
+     * go back to the default. The limit is shared by every profile on that host.
+     */
+    @PutMapping("/{profileId}/bandwidth")
+    public ResponseEntity<SFTPResponse<Map<String, Object>>> setHostBandwidthLimit(
+            @PathVariable Long profileId,
+            @RequestParam(required = false) Long bytesPerSecond) {
+        try {
+            SSHProfile profile = sshProfileService.findById(profileId);
+            String host = SFTPSessionManager.hostKey(profile.getHost(), profile.getPort());
+            transferScheduler.setHostLimit(host, bytesPerSecond != null ? requireLimit(bytesPerSecond) : null);
+            return ResponseEntity.ok(SFTPResponse.success("Bandwidth limit updated", transferScheduler.getBandwidthLimits()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error setting bandwidth limit for profile {}: {}", profileId, e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Set the bandwidth limit of one queued or running transfer (0 = unlimited)
+     */
+    @PutMapping("/progress/{transferId}/bandwidth")
+    public ResponseEntity<SFTPResponse<String>> setTransferBandwidthLimit(
+            @PathVariable String transferId,
+            @RequestParam long bytesPerSecond) {
+        try {
+            if (!transferScheduler.setTransferLimit(transferId, requireLimit(bytesPerSecond))) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(SFTPResponse.success("Bandwidth limit updated"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error setting bandwidth limit for transfer {}: {}", transferId, e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Get channel pool statistics for all active SFTP sessions
+     */
+    @GetMapping("/pool/stats")
+    public ResponseEntity<SFTPResponse<List<SFTPPoolStats>>> getPoolStats() {
+        try {
+            return ResponseEntity.ok(SFTPResponse.success(sessionManager.getPoolStats()));
+        } catch (Exception e) {
+            log.error("Error getting SFTP pool stats: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Get the copy buffer size and request pipelining depth each profile settled on,
+     * with the round trip and throughput they were derived from
+     */
+    @GetMapping("/tuning")
+    public ResponseEntity<SFTPResponse<List<SFTPTransferTuning>>> getTransferTuning() {
+        try {
+            return ResponseEntity.ok(SFTPResponse.success(transferTuner.getTunings()));
+        } catch (Exception e) {
+            log.error("Error getting transfer tuning: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Get copy buffer pool statistics
+     */
+    @GetMapping("/tuning/buffers")
+    public ResponseEntity<SFTPResponse<Map<String, Object>>> getBufferPoolStats() {
+        try {
+            return ResponseEntity.ok(SFTPResponse.success(bufferPool.getStats()));
+        } catch (Exception e) {
+            log.error("Error getting buffer pool stats: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
     /**
      * Create a directory on the remote server
      */
@@ -238,6 +692,136 @@ public class SFTPController {
         }
     }
 
+    /**
+     * Start a background job deleting a file or a whole directory tree
+     * Progress and cancellation use the returned transferId
+     */
+    @PostMapping("/{profileId}/jobs/delete")
+    public ResponseEntity<SFTPResponse<Map<String, String>>> deleteRecursive(
+            @PathVariable Long profileId,
+            @RequestParam String path,
+            @RequestParam(required = false) String transferId) {
+        String jobId = transferId != null ? transferId : UUID.randomUUID().toString();
+        try {
+            String sessionId = sftpService.connect(profileId);
+            treeOperationService.startDelete(sessionId, path, jobId);
+            return ResponseEntity.ok(SFTPResponse.success("Delete started", Map.of("transferId", jobId, "path", path)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(SFTPResponse.error(e.getMessage()));
+        } catch (SftpException e) {
+            log.error("Failed to start delete of {} for profile {}: {}", path, profileId, e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error("Failed to delete: " + e.getMessage()));
+        } catch (Exception e) {
+            log.error("Unexpected error starting delete for profile {}: {}", profileId, e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Start a background job copying a file or directory tree to a new path on the same server
+     */
+    @PostMapping("/{profileId}/jobs/copy")
+    public ResponseEntity<SFTPResponse<Map<String, String>>> copyRecursive(
+            @PathVariable Long profileId,
+            @RequestParam String sourcePath,
+            @RequestParam String targetPath,
+            @RequestParam(required = false) String transferId) {
+        String jobId = transferId != null ? transferId : UUID.randomUUID().toString();
+        try {
+            String sessionId = sftpService.connect(profileId);
+            treeOperationService.startCopy(sessionId, sourcePath, targetPath, jobId);
+            return ResponseEntity.ok(SFTPResponse.success("Copy started",
+                    Map.of("transferId", jobId, "sourcePath", sourcePath, "targetPath", targetPath)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(SFTPResponse.error(e.getMessage()));
+        } catch (SftpException e) {
+            log.error("Failed to start copy of {} to {} for profile {}: {}", sourcePath, targetPath, profileId, e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error("Failed to copy: " + e.getMessage()));
+        } catch (Exception e) {
+            log.error("Unexpected error starting copy for profile {}: {}", profileId, e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Copy a file from one profile's server to another's without passing through the client
+     * Runs in the background; progress and cancellation use the returned transferId
+     */
+    @PostMapping("/server-copy")
+    public ResponseEntity<SFTPResponse<Map<String, String>>> serverCopy(
+            @RequestParam Long sourceProfileId,
+            @RequestParam String sourcePath,
+            @RequestParam Long targetProfileId,
+            @RequestParam String targetPath,
+            @RequestParam(required = false) String transferId) {
+        String effectiveTransferId = transferId != null ? transferId : UUID.randomUUID().toString();
+        try {
+            String target = serverTransferService.startTransfer(
+                    sourceProfileId, sourcePath, targetProfileId, targetPath, effectiveTransferId);
+            return ResponseEntity.ok(SFTPResponse.success("Server-to-server copy started",
+                    Map.of("transferId", effectiveTransferId, "targetPath", target)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(SFTPResponse.error(e.getMessage()));
+        } catch (SftpException | JSchException e) {
+            log.error("Failed to start server-to-server copy of {} from profile {} to profile {}: {}",
+                    sourcePath, sourceProfileId, targetProfileId, e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error("Failed to start copy: " + e.getMessage()));
+        } catch (Exception e) {
+            log.error("Unexpected error starting server-to-server copy: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Total size of a file or directory tree in bytes
+     */
+    @GetMapping("/{profileId}/disk-usage")
+    public ResponseEntity<SFTPResponse<Map<String, Object>>> getDiskUsage(
+            @PathVariable Long profileId,
+            @RequestParam String path) {
+        try {
+            String sessionId = sftpService.connect(profileId);
+            long bytes = sftpService.getDiskUsage(sessionId, path);
+            return ResponseEntity.ok(SFTPResponse.success(Map.of("path", path, "bytes", bytes)));
+        } catch (SftpException e) {
+            log.error("Failed to get disk usage of {} for profile {}: {}", path, profileId, e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error("Failed to get disk usage: " + e.getMessage()));
+        } catch (Exception e) {
+            log.error("Unexpected error getting disk usage for profile {}: {}", profileId, e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * SHA-256 checksum of a remote file
+     */
+    @GetMapping("/{profileId}/checksum")
+    public ResponseEntity<SFTPResponse<Map<String, String>>> getChecksum(
+            @PathVariable Long profileId,
+            @RequestParam String path) {
+        try {
+            String sessionId = sftpService.connect(profileId);
+            String sha256 = sftpService.getChecksum(sessionId, path);
+            return ResponseEntity.ok(SFTPResponse.success(Map.of("path", path, "sha256", sha256)));
+        } catch (SftpException e) {
+            log.error("Failed to checksum {} for profile {}: {}", path, profileId, e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error("Failed to compute checksum: " + e.getMessage()));
+        } catch (Exception e) {
+            log.error("Unexpected error computing checksum for profile {}: {}", profileId, e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
     /**
      * Rename/move a file or directory on the remote server
      */
@@ -362,4 +946,18 @@ public class SFTPController {
             return ResponseEntity.ok(SFTPResponse.success("Not connected", status));
         }
     }
-} 
\ No newline at end of file
+
+    private long requireLimit(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("bytesPerSecond must not be negative");
+        }
+        return bytesPerSecond;
+    }
+
+    /**
+     * Weak validator built from size and mtime; SFTP exposes no content hash
+     */
+    private String buildWeakETag(SftpATTRS attrs) {
+        return "W/\"" + Long.toHexString(attrs.getSize()) + "-" + Integer.toHexString(attrs.getMTime()) + "\"";
+    }
+}
\ No newline at end of file
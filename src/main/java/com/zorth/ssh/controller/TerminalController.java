@@ -0,0 +1,33 @@
+package com.zorth.ssh.controller;
+
+import com.zorth.ssh.service.TerminalOutputPump;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Slf4j
+@RestController
+@RequestMapping("/terminal")
+@RequiredArgsConstructor
+public class TerminalController {
+
+    private final TerminalOutputPump terminalOutputPump;
+
+    /**
+     * Gauge of terminal pump threads versus open shells
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<?> getStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("pumpMode", terminalOutputPump.getMode());
+        response.put("livePumpThreads", terminalOutputPump.getLivePumpThreads());
+        response.put("activeShells", terminalOutputPump.getActiveShellCount());
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,66 @@
+package com.zorth.ssh.controller;
+
+import com.zorth.ssh.dto.HostThroughputStats;
+import com.zorth.ssh.dto.SFTPResponse;
+import com.zorth.ssh.entity.TransferRecord;
+import com.zorth.ssh.service.TransferHistoryService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.web.PagedModel;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * History of finished transfers, for capacity planning
+ */
+@Slf4j
+@RestController
+@RequestMapping("/sftp/history")
+@RequiredArgsConstructor
+public class TransferHistoryController {
+
+    private final TransferHistoryService transferHistoryService;
+
+    /**
+     * Page through finished transfers, newest first, optionally for one profile or one host:port
+     */
+    @GetMapping
+    public ResponseEntity<SFTPResponse<PagedModel<TransferRecord>>> getHistory(
+            @RequestParam(required = false) Long profileId,
+            @RequestParam(required = false) String host,
+            @RequestParam(defaultValue = "30") int days,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        try {
+            return ResponseEntity.ok(SFTPResponse.success(
+                    new PagedModel<>(transferHistoryService.findRecords(profileId, host, days, page, size))));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error getting transfer history: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+
+    /**
+     * Throughput of completed transfers per host:port
+     */
+    @GetMapping("/hosts")
+    public ResponseEntity<SFTPResponse<List<HostThroughputStats>>> getHostThroughput(
+            @RequestParam(defaultValue = "30") int days) {
+        try {
+            return ResponseEntity.ok(SFTPResponse.success(transferHistoryService.getHostThroughput(days)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(SFTPResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error getting host throughput: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(SFTPResponse.error("Internal server error"));
+        }
+    }
+}
@@ -10,6 +10,8 @@ import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.stereotype.Controller;
 
+import java.util.List;
+
 @Slf4j
 @Controller
 @RequiredArgsConstructor
@@ -42,6 +44,20 @@ public class TransferProgressWebSocketController {
         return notFound;
     }
     
+    /**
+     * Handle subscription to the combined progress feed
+     * Client subscribes to: /topic/transfer-progress
+     * Replies with recently finished transfers followed by the tracked ones, so a late
+     * subscriber sees how transfers it missed ended
+     */
+    @SubscribeMapping("/transfer-progress")
+    public List<TransferProgress> subscribeToAllTransferProgress() {
+        List<TransferProgress> transfers = progressTracker.getRecentTransfers();
+        transfers.addAll(progressTracker.getActiveTransfers());
+        log.debug("Client subscribed to all transfer progress, returning {} transfers", transfers.size());
+        return transfers;
+    }
+    
     /**
      * Handle client requests for current transfer status
      * Client sends to: /app/transfer-status/{transferId}
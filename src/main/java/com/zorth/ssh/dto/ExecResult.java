@@ -0,0 +1,20 @@
+package com.zorth.ssh.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExecResult {
+    private int exitCode; // -1 when the command did not report one (e.g. killed on timeout)
+    private String stdout;
+    private String stderr;
+    private boolean timedOut;
+    private long durationMillis;
+
+    public boolean isSuccess() {
+        return !timedOut && exitCode == 0;
+    }
+}
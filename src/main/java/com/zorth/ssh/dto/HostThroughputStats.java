@@ -0,0 +1,31 @@
+package com.zorth.ssh.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class HostThroughputStats {
+    private String host;
+    private long transfers;
+    private long totalBytes;
+    private long totalDurationMs;
+    private long averageThroughputBytesPerSecond; // mean of the per-transfer averages
+    private long aggregateThroughputBytesPerSecond; // total bytes over total duration
+    private long maxThroughputBytesPerSecond;
+    private String aggregateThroughputFormatted;
+
+    public HostThroughputStats(String host, Long transfers, Long totalBytes, Long totalDurationMs,
+                               Double averageThroughput, Long maxThroughput) {
+        this.host = host;
+        this.transfers = transfers != null ? transfers : 0;
+        this.totalBytes = totalBytes != null ? totalBytes : 0;
+        this.totalDurationMs = totalDurationMs != null ? totalDurationMs : 0;
+        this.averageThroughputBytesPerSecond = averageThroughput != null ? averageThroughput.longValue() : 0;
+        this.maxThroughputBytesPerSecond = maxThroughput != null ? maxThroughput : 0;
+        this.aggregateThroughputBytesPerSecond = this.totalDurationMs > 0
+                ? this.totalBytes * 1000 / this.totalDurationMs
+                : 0;
+        this.aggregateThroughputFormatted = TransferProgress.formatSpeed(aggregateThroughputBytesPerSecond);
+    }
+}
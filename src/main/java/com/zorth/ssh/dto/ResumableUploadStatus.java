@@ -0,0 +1,20 @@
+package com.zorth.ssh.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResumableUploadStatus {
+    private String transferId;
+    private String remotePath;
+    private long totalBytes;
+    private long receivedBytes;
+    private List<long[]> receivedRanges; // [start, end) pairs already on the server
+    private List<long[]> missingRanges; // [start, end) pairs the client still has to send
+    private boolean complete;
+}
@@ -0,0 +1,17 @@
+package com.zorth.ssh.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SFTPFilePage {
+    private String path;
+    private List<SFTPFileInfo> files;
+    private String nextCursor; // null on the last page
+    private long matchedEntries; // entries in the directory passing the name filter
+}
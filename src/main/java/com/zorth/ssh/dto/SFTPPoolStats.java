@@ -0,0 +1,20 @@
+package com.zorth.ssh.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SFTPPoolStats {
+    private String sessionId;
+    private int maxChannels;
+    private int idleChannels;
+    private int borrowedChannels;
+    private int waitingBorrowers;
+    private long totalBorrows;
+    private long totalWaits; // borrows that had to queue for a free channel
+    private long averageWaitMillis;
+    private long maxWaitMillis;
+}
@@ -0,0 +1,19 @@
+package com.zorth.ssh.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SFTPTransferTuning {
+    private Long profileId;
+    private String host;
+    private double rttMillis; // smoothed round trip of an SFTP request, 0 until probed
+    private long throughputBytesPerSecond; // smoothed over transfers large enough to sample
+    private String throughputFormatted;
+    private int bufferSize;
+    private int bulkRequests; // JSch read/write requests kept in flight per channel
+    private long samples;
+}
@@ -23,9 +23,11 @@ public class TransferProgress {
     private long estimatedRemainingSeconds;
     private TransferStatus status;
     private String errorMessage;
+    private long bandwidthLimitBytesPerSecond; // 0 = unlimited
     
     public enum TransferStatus {
         STARTING,
+        QUEUED,
         IN_PROGRESS,
         COMPLETED,
         FAILED,
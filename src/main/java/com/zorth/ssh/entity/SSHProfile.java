@@ -43,6 +43,10 @@ public class SSHProfile {
     @Column(name = "key_passphrase_encrypted")
     private String keyPassphraseEncrypted;
 
+    // Whether file operations may run shell commands (rm -rf, du, sha256sum) on the host; null means allowed
+    @Column(name = "exec_enabled")
+    private Boolean execEnabled;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
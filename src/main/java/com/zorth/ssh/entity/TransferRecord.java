@@ -0,0 +1,71 @@
+package com.zorth.ssh.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outcome of one finished transfer, kept for capacity planning after the live
+ * progress entry has been reaped. Rows are inserted in batches by
+ * {@link com.zorth.ssh.service.TransferHistoryWriter}, not through JPA.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "transfer_records", indexes = {
+        @Index(name = "idx_transfer_records_finished_at", columnList = "finished_at"),
+        @Index(name = "idx_transfer_records_profile", columnList = "profile_id, finished_at"),
+        @Index(name = "idx_transfer_records_host", columnList = "host, finished_at")
+})
+public class TransferRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "transfer_id", nullable = false)
+    private String transferId;
+
+    @Column(name = "profile_id")
+    private Long profileId;
+
+    // host:port of the remote side
+    @Column(name = "host", nullable = false)
+    private String host;
+
+    @Column(name = "remote_path", length = 1024)
+    private String remotePath;
+
+    @Column(name = "operation", nullable = false, length = 32)
+    private String operation;
+
+    @Column(name = "status", nullable = false, length = 32)
+    private String status;
+
+    @Column(name = "bytes_transferred", nullable = false)
+    private long bytesTransferred;
+
+    // -1 when the size was not known up front
+    @Column(name = "total_bytes", nullable = false)
+    private long totalBytes;
+
+    @Column(name = "duration_ms", nullable = false)
+    private long durationMs;
+
+    // Average over the whole transfer, including time spent queued or throttled
+    @Column(name = "throughput_bytes_per_second", nullable = false)
+    private long throughputBytesPerSecond;
+
+    @Column(name = "error_message", length = 1000)
+    private String errorMessage;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at", nullable = false)
+    private LocalDateTime finishedAt;
+}
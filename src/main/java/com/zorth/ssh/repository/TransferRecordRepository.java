@@ -0,0 +1,29 @@
+package com.zorth.ssh.repository;
+
+import com.zorth.ssh.dto.HostThroughputStats;
+import com.zorth.ssh.entity.TransferRecord;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface TransferRecordRepository extends JpaRepository<TransferRecord, Long> {
+
+    Page<TransferRecord> findByFinishedAtAfter(LocalDateTime since, Pageable pageable);
+
+    Page<TransferRecord> findByProfileIdAndFinishedAtAfter(Long profileId, LocalDateTime since, Pageable pageable);
+
+    Page<TransferRecord> findByHostAndFinishedAtAfter(String host, LocalDateTime since, Pageable pageable);
+
+    @Query("select new com.zorth.ssh.dto.HostThroughputStats(r.host, count(r), sum(r.bytesTransferred), " +
+            "sum(r.durationMs), avg(r.throughputBytesPerSecond), max(r.throughputBytesPerSecond)) " +
+            "from TransferRecord r where r.status = :status and r.finishedAt > :since " +
+            "group by r.host order by sum(r.bytesTransferred) desc")
+    List<HostThroughputStats> aggregateByHost(@Param("status") String status, @Param("since") LocalDateTime since);
+}
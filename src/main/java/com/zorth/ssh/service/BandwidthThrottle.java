@@ -0,0 +1,76 @@
+package com.zorth.ssh.service;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting a byte rate. Callers take tokens for the bytes they just moved
+ * and are told how long to pause; the bucket may go into debt, so concurrent callers
+ * sharing one bucket are slowed down in proportion and the aggregate rate holds.
+ * A rate of 0 or less means unlimited.
+ */
+public class BandwidthThrottle {
+
+    private static final long MIN_BURST_BYTES = 64 * 1024;
+
+    private volatile long bytesPerSecond;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+
+    public BandwidthThrottle(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = getBurst(bytesPerSecond);
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public synchronized void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = Math.min(tokens, getBurst(bytesPerSecond));
+    }
+
+    public boolean isLimited() {
+        return bytesPerSecond > 0;
+    }
+
+    /**
+     * Takes {@code bytes} tokens and returns how many nanoseconds the caller should wait
+     */
+    public synchronized long reserve(long bytes) {
+        long rate = bytesPerSecond;
+        if (rate <= 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(getBurst(rate), tokens + (now - lastRefillNanos) * rate / 1e9);
+        lastRefillNanos = now;
+        tokens -= bytes;
+        return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / rate);
+    }
+
+    /**
+     * Sleeps for the longest of the waits reserved on the given throttles
+     */
+    public static void acquire(long bytes, BandwidthThrottle... throttles) throws InterruptedIOException {
+        long waitNanos = 0;
+        for (BandwidthThrottle throttle : throttles) {
+            if (throttle != null && throttle.isLimited()) {
+                waitNanos = Math.max(waitNanos, throttle.reserve(bytes));
+            }
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttled");
+            }
+        }
+    }
+
+    private static double getBurst(long rate) {
+        return Math.max(MIN_BURST_BYTES, rate);
+    }
+}
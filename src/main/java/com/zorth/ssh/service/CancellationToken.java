@@ -0,0 +1,78 @@
+package com.zorth.ssh.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cooperative cancellation flag for one transfer. Copy loops poll it between buffers;
+ * code that may block inside JSch registers a callback that tears the channel down so
+ * the blocked call fails straight away instead of running to the end of the file.
+ */
+@Slf4j
+public class CancellationToken {
+
+    /**
+     * Token for work that cannot be cancelled
+     */
+    public static final CancellationToken NONE = new CancellationToken("none");
+
+    /**
+     * Undoes an {@link #onCancel} registration; use in try-with-resources
+     */
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final String transferId;
+    private final Set<Runnable> callbacks = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    public CancellationToken(String transferId) {
+        this.transferId = transferId;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void throwIfCancelled() throws TransferCancelledException {
+        if (cancelled) {
+            throw new TransferCancelledException(transferId);
+        }
+    }
+
+    /**
+     * Runs {@code callback} once when the token is cancelled, or right away if it
+     * already is. The callback runs on the cancelling thread and must not block.
+     */
+    public Registration onCancel(Runnable callback) {
+        if (this == NONE) {
+            return () -> { };
+        }
+        callbacks.add(callback);
+        if (cancelled && callbacks.remove(callback)) {
+            callback.run();
+        }
+        return () -> callbacks.remove(callback);
+    }
+
+    void cancel() {
+        if (this == NONE) {
+            return;
+        }
+        cancelled = true;
+        for (Runnable callback : callbacks) {
+            if (callbacks.remove(callback)) {
+                try {
+                    callback.run();
+                } catch (Exception e) {
+                    log.warn("Cancellation callback for transfer {} failed: {}", transferId, e.getMessage());
+                }
+            }
+        }
+    }
+}
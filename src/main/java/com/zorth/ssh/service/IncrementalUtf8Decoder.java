@@ -0,0 +1,86 @@
+package com.zorth.ssh.service;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stateful UTF-8 decoder for a byte stream that arrives in arbitrary pieces.
+ * A multibyte character split across two reads is held back until its remaining
+ * bytes arrive instead of being turned into replacement characters, so CJK output
+ * survives read boundaries. Buffers are allocated once per stream and reused.
+ * Not thread safe; use one instance per terminal.
+ */
+public class IncrementalUtf8Decoder {
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer pending;
+    private final CharBuffer chars;
+
+    public IncrementalUtf8Decoder(int bufferSize) {
+        // Room for a full read plus up to three bytes carried over from the previous one
+        this.pending = ByteBuffer.allocate(bufferSize + 3);
+        this.chars = CharBuffer.allocate(bufferSize + 3);
+    }
+
+    /**
+     * Decodes the given bytes and returns every character that is complete so far
+     */
+    public String decode(byte[] data, int offset, int length) {
+        StringBuilder overflow = null;
+        int position = offset;
+        int end = offset + length;
+        do {
+            int chunk = Math.min(end - position, pending.remaining());
+            pending.put(data, position, chunk);
+            position += chunk;
+            pending.flip();
+            CoderResult result;
+            while ((result = decoder.decode(pending, chars, false)).isOverflow()) {
+                overflow = drainChars(overflow);
+            }
+            // Keeps an incomplete trailing sequence at the front for the next call
+            pending.compact();
+        } while (position < end);
+        return takeChars(overflow);
+    }
+
+    /**
+     * Flushes a dangling partial sequence at end of stream as a replacement character
+     */
+    public String finish() {
+        pending.flip();
+        decoder.decode(pending, chars, true);
+        decoder.flush(chars);
+        pending.clear();
+        decoder.reset();
+        return takeChars(null);
+    }
+
+    private StringBuilder drainChars(StringBuilder overflow) {
+        if (overflow == null) {
+            overflow = new StringBuilder(chars.capacity() * 2);
+        }
+        chars.flip();
+        overflow.append(chars);
+        chars.clear();
+        return overflow;
+    }
+
+    private String takeChars(StringBuilder overflow) {
+        chars.flip();
+        String result;
+        if (overflow == null) {
+            result = chars.toString();
+        } else {
+            result = overflow.append(chars).toString();
+        }
+        chars.clear();
+        return result;
+    }
+}
@@ -8,18 +8,26 @@ import java.io.InputStream;
 @Slf4j
 public class ProgressTrackingInputStream extends FilterInputStream {
     
-    private final TransferProgressTracker progressTracker;
     private final String transferId;
+    private final TransferScheduler transferScheduler;
+    private final CancellationToken cancellationToken;
+    private final TransferState transferState;
     private long totalBytesRead = 0;
-    private long lastUpdateBytes = 0;
-    private static final long UPDATE_THRESHOLD = 64 * 1024; // 64KB
-    private static final long MIN_UPDATE_INTERVAL_MS = 100; // Minimum time between updates
-    private long lastUpdateTime = System.currentTimeMillis();
     
     public ProgressTrackingInputStream(InputStream in, TransferProgressTracker progressTracker, String transferId) {
+        this(in, progressTracker, transferId, null);
+    }
+
+    /**
+     * Also charges every byte against the scheduler's bandwidth caps for {@code transferId}
+     */
+    public ProgressTrackingInputStream(InputStream in, TransferProgressTracker progressTracker, String transferId,
+            TransferScheduler transferScheduler) {
         super(in);
-        this.progressTracker = progressTracker;
         this.transferId = transferId;
+        this.transferScheduler = transferScheduler;
+        this.cancellationToken = progressTracker.getCancellationToken(transferId);
+        this.transferState = progressTracker.getState(transferId);
         log.debug("Created ProgressTrackingInputStream for transfer: {}", transferId);
     }
     
@@ -29,18 +37,15 @@ public class ProgressTrackingInputStream extends FilterInputStream {
         if (result != -1) {
             totalBytesRead++;
             updateProgress();
+            throttle(1);
         }
         return result;
     }
     
     @Override
     public int read(byte[] b) throws IOException {
-        int result = super.read(b);
-        if (result != -1) {
-            totalBytesRead += result;
-            updateProgress();
-        }
-        return result;
+        // FilterInputStream delegates to read(byte[], int, int), which does the counting
+        return read(b, 0, b.length);
     }
     
     @Override
@@ -49,6 +54,7 @@ public class ProgressTrackingInputStream extends FilterInputStream {
         if (result != -1) {
             totalBytesRead += result;
             updateProgress();
+            throttle(result);
         }
         return result;
     }
@@ -59,29 +65,23 @@ public class ProgressTrackingInputStream extends FilterInputStream {
         if (result > 0) {
             totalBytesRead += result;
             updateProgress();
+            throttle(result);
         }
         return result;
     }
     
-    private void updateProgress() {
-        long currentTime = System.currentTimeMillis();
-        // Update if we've read enough new bytes OR enough time has passed
-        if ((totalBytesRead - lastUpdateBytes >= UPDATE_THRESHOLD) || 
-            (currentTime - lastUpdateTime >= MIN_UPDATE_INTERVAL_MS)) {
-            log.debug("Updating progress for transfer {}: {} bytes read", transferId, totalBytesRead);
-            progressTracker.updateProgress(transferId, totalBytesRead);
-            lastUpdateBytes = totalBytesRead;
-            lastUpdateTime = currentTime;
+    private void throttle(long bytes) throws IOException {
+        // Checked per buffer so a cancelled transfer stops at the next read or write
+        cancellationToken.throwIfCancelled();
+        if (transferScheduler != null) {
+            transferScheduler.throttle(transferId, bytes);
         }
     }
     
-    @Override
-    public void close() throws IOException {
-        // Send final progress update
-        if (totalBytesRead > lastUpdateBytes) {
-            log.debug("Sending final progress update for transfer {}: {} bytes read", transferId, totalBytesRead);
-            progressTracker.updateProgress(transferId, totalBytesRead);
+    private void updateProgress() {
+        // A few atomic writes; speed and percentages are derived when progress is published
+        if (transferState != null) {
+            transferState.update(totalBytesRead);
         }
-        super.close();
     }
-} 
\ No newline at end of file
+}
@@ -8,16 +8,26 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class ProgressTrackingOutputStream extends FilterOutputStream {
     
-    private final TransferProgressTracker progressTracker;
     private final String transferId;
+    private final TransferScheduler transferScheduler;
+    private final CancellationToken cancellationToken;
+    private final TransferState transferState;
     private long totalBytesWritten = 0;
-    private long lastUpdateBytes = 0;
-    private static final long UPDATE_THRESHOLD = 256 * 1024; // 256KB
     
     public ProgressTrackingOutputStream(OutputStream out, TransferProgressTracker progressTracker, String transferId) {
+        this(out, progressTracker, transferId, null);
+    }
+
+    /**
+     * Also charges every byte against the scheduler's bandwidth caps for {@code transferId}
+     */
+    public ProgressTrackingOutputStream(OutputStream out, TransferProgressTracker progressTracker, String transferId,
+            TransferScheduler transferScheduler) {
         super(out);
-        this.progressTracker = progressTracker;
         this.transferId = transferId;
+        this.transferScheduler = transferScheduler;
+        this.cancellationToken = progressTracker.getCancellationToken(transferId);
+        this.transferState = progressTracker.getState(transferId);
         log.debug("Created ProgressTrackingOutputStream for transfer: {}", transferId);
     }
     
@@ -26,38 +36,35 @@ public class ProgressTrackingOutputStream extends FilterOutputStream {
         super.write(b);
         totalBytesWritten++;
         updateProgress();
+        throttle(1);
     }
     
     @Override
     public void write(byte[] b) throws IOException {
-        super.write(b);
-        totalBytesWritten += b.length;
-        updateProgress();
+        write(b, 0, b.length);
     }
     
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        super.write(b, off, len);
+        // FilterOutputStream would split this into single-byte writes counted a second time
+        out.write(b, off, len);
         totalBytesWritten += len;
         updateProgress();
+        throttle(len);
     }
     
-    private void updateProgress() {
-        // Only update if we've written enough new bytes
-        if (totalBytesWritten - lastUpdateBytes >= UPDATE_THRESHOLD) {
-            log.debug("Updating progress for transfer {}: {} bytes written", transferId, totalBytesWritten);
-            progressTracker.updateProgress(transferId, totalBytesWritten);
-            lastUpdateBytes = totalBytesWritten;
+    private void throttle(long bytes) throws IOException {
+        // Checked per buffer so a cancelled transfer stops at the next read or write
+        cancellationToken.throwIfCancelled();
+        if (transferScheduler != null) {
+            transferScheduler.throttle(transferId, bytes);
         }
     }
     
-    @Override
-    public void close() throws IOException {
-        // Send final progress update
-        if (totalBytesWritten > lastUpdateBytes) {
-            log.debug("Sending final progress update for transfer {}: {} bytes written", transferId, totalBytesWritten);
-            progressTracker.updateProgress(transferId, totalBytesWritten);
+    private void updateProgress() {
+        // A few atomic writes; speed and percentages are derived when progress is published
+        if (transferState != null) {
+            transferState.update(totalBytesWritten);
         }
-        super.close();
     }
-} 
\ No newline at end of file
+}
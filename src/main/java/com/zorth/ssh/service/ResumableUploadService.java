@@ -0,0 +1,148 @@
+package com.zorth.ssh.service;
+
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+import com.zorth.ssh.dto.ResumableUploadStatus;
+import com.zorth.ssh.dto.TransferProgress;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+/**
+ * Chunked upload protocol that survives dropped connections: initiate, write
+ * chunks at arbitrary offsets into a remote .part file, query what has arrived,
+ * then commit. State lives in TransferProgressTracker under the transferId.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ResumableUploadService {
+
+    private final SFTPService sftpService;
+    private final SFTPChunkedTransferService chunkedTransferService;
+    private final TransferProgressTracker progressTracker;
+
+    /**
+     * Creates the .part file and registers the upload
+     *
+     * @throws IllegalStateException if {@code transferId} already names a transfer
+     */
+    public ResumableUploadStatus initiate(Long profileId, String path, String fileName, long totalBytes, String transferId)
+            throws IOException, SftpException, JSchException {
+        if (totalBytes < 0) {
+            throw new IllegalArgumentException("Total size must be known and not negative: " + totalBytes);
+        }
+        String effectiveTransferId = transferId != null ? transferId : UUID.randomUUID().toString();
+        String remotePath = path.endsWith("/") ? path + fileName : path + "/" + fileName;
+        String partPath = chunkedTransferService.getTempPath(remotePath);
+
+        String sessionId = sftpService.connect(profileId);
+        TransferProgressTracker.ResumableUploadState state =
+                new TransferProgressTracker.ResumableUploadState(profileId, sessionId, remotePath, partPath, totalBytes);
+        // Reserve the ID before touching the server so a second initiate cannot replace a live upload
+        if (progressTracker.getState(effectiveTransferId) != null
+                || !progressTracker.registerResumableUpload(effectiveTransferId, state)) {
+            throw new IllegalStateException("Transfer ID already in use: " + effectiveTransferId);
+        }
+        try {
+            chunkedTransferService.createEmpty(sessionId, partPath);
+        } catch (IOException | SftpException | JSchException | RuntimeException e) {
+            progressTracker.removeResumableUpload(effectiveTransferId);
+            throw e;
+        }
+        progressTracker.startTransfer(effectiveTransferId, fileName, "UPLOAD", totalBytes);
+        progressTracker.describeTransfer(effectiveTransferId, sessionId, remotePath);
+
+        log.info("Initiated resumable upload {} to {} ({} bytes) via {}", effectiveTransferId, remotePath, totalBytes, partPath);
+        return toStatus(effectiveTransferId, state);
+    }
+
+    /**
+     * Writes one chunk at the given offset. Chunks may arrive in any order and may be resent.
+     */
+    public ResumableUploadStatus writeChunk(String transferId, long offset, Long contentLength, InputStream inputStream)
+            throws IOException, SftpException, JSchException {
+        TransferProgressTracker.ResumableUploadState state = getState(transferId);
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative: " + offset);
+        }
+        // Checked up front when the length is declared; chunked bodies are cut off at the bound while writing
+        long maxBytes = state.getTotalBytes() - offset;
+        if (maxBytes < 0 || (contentLength != null && contentLength > maxBytes)) {
+            throw new IllegalArgumentException("Chunk at " + offset + " exceeds declared size " + state.getTotalBytes());
+        }
+
+        String sessionId = sftpService.connect(state.getProfileId());
+        long written = chunkedTransferService.writeAt(sessionId, state.getPartPath(), offset, inputStream, maxBytes);
+        state.addRange(offset, offset + written);
+        progressTracker.updateProgress(transferId, state.getReceivedBytes());
+
+        log.debug("Resumable upload {} received [{}, {})", transferId, offset, offset + written);
+        return toStatus(transferId, state);
+    }
+
+    public ResumableUploadStatus getStatus(String transferId) {
+        return toStatus(transferId, getState(transferId));
+    }
+
+    /**
+     * Moves the assembled .part file into place once every byte has arrived
+     */
+    public ResumableUploadStatus commit(String transferId) throws SftpException, JSchException {
+        TransferProgressTracker.ResumableUploadState state = getState(transferId);
+        if (!state.isComplete()) {
+            throw new IllegalStateException("Upload " + transferId + " is missing "
+                    + state.getMissingRanges().size() + " range(s)");
+        }
+
+        String sessionId = sftpService.connect(state.getProfileId());
+        chunkedTransferService.moveIntoPlace(sessionId, state.getPartPath(), state.getRemotePath());
+        sftpService.invalidateListing(sessionId, state.getRemotePath());
+        progressTracker.removeResumableUpload(transferId);
+        progressTracker.completeTransfer(transferId);
+
+        log.info("Committed resumable upload {} to {}", transferId, state.getRemotePath());
+        return toStatus(transferId, state);
+    }
+
+    /**
+     * Drops the upload and removes its .part file
+     */
+    public void abort(String transferId) throws JSchException {
+        TransferProgressTracker.ResumableUploadState state = progressTracker.removeResumableUpload(transferId);
+        if (state == null) {
+            throw new IllegalArgumentException("No resumable upload found: " + transferId);
+        }
+        chunkedTransferService.removeQuietly(sftpService.connect(state.getProfileId()), state.getPartPath());
+        progressTracker.cancelTransfer(transferId);
+        log.info("Aborted resumable upload {}", transferId);
+    }
+
+    private TransferProgressTracker.ResumableUploadState getState(String transferId) {
+        TransferProgressTracker.ResumableUploadState state = progressTracker.getResumableUpload(transferId);
+        if (state == null) {
+            throw new IllegalArgumentException("No resumable upload found: " + transferId);
+        }
+        TransferProgress progress = progressTracker.getProgress(transferId);
+        if (progress != null && progress.getStatus() == TransferProgress.TransferStatus.CANCELLED) {
+            throw new IllegalStateException("Upload " + transferId + " was cancelled");
+        }
+        return state;
+    }
+
+    private ResumableUploadStatus toStatus(String transferId, TransferProgressTracker.ResumableUploadState state) {
+        return new ResumableUploadStatus(
+            transferId,
+            state.getRemotePath(),
+            state.getTotalBytes(),
+            state.getReceivedBytes(),
+            state.getReceivedRanges(),
+            state.getMissingRanges(),
+            state.isComplete()
+        );
+    }
+}
@@ -0,0 +1,393 @@
+package com.zorth.ssh.service;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams a remote directory tree to the client as a zip, tar or tar.gz archive.
+ * The tree is walked depth first, one directory listing at a time. Small files are
+ * prefetched on several pooled channels ahead of the archive writer; files larger than
+ * one chunk are fetched in parallel chunks by SFTPChunkedTransferService. Nothing is
+ * staged on local disk and memory stays bounded by parallelism x chunk size.
+ * A file that shrinks or disappears between the walk and the read does not fail the
+ * archive: its tar entry is padded with zeros to the walked size, its zip entry simply
+ * holds the bytes that were read.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SFTPArchiveService {
+
+    private static final int MAX_LOOKAHEAD_ENTRIES = 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 65536;
+    private static final byte[] ZERO_PADDING = new byte[8192];
+
+    private final SFTPSessionManager sessionManager;
+    private final SFTPChunkedTransferService chunkedTransferService;
+
+    @Value("${sftp.archive.compression-level:1}")
+    private int compressionLevel;
+
+    public enum ArchiveFormat {
+        ZIP(".zip", "application/zip"),
+        TAR(".tar", "application/x-tar"),
+        TAR_GZ(".tar.gz", "application/gzip");
+
+        private final String extension;
+        private final String contentType;
+
+        ArchiveFormat(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public static ArchiveFormat fromParameter(String format) {
+            return switch (format.toLowerCase()) {
+                case "zip" -> ZIP;
+                case "tar" -> TAR;
+                case "tar.gz", "tgz" -> TAR_GZ;
+                default -> throw new IllegalArgumentException("Unsupported archive format: " + format);
+            };
+        }
+    }
+
+    private static class RemoteEntry {
+        private final String path;
+        private final String archiveName;
+        private final boolean directory;
+        private final long size;
+        private final int mtime;
+        private final int permissions;
+
+        private RemoteEntry(String path, String archiveName, SftpATTRS attrs) {
+            this.path = path;
+            this.archiveName = archiveName;
+            this.directory = attrs.isDir();
+            this.size = attrs.getSize();
+            this.mtime = attrs.getMTime();
+            this.permissions = attrs.getPermissions();
+        }
+    }
+
+    private static class PendingEntry {
+        private final RemoteEntry entry;
+        private final Future<SFTPChunkedTransferService.Chunk> prefetched;
+
+        private PendingEntry(RemoteEntry entry, Future<SFTPChunkedTransferService.Chunk> prefetched) {
+            this.entry = entry;
+            this.prefetched = prefetched;
+        }
+    }
+
+    /**
+     * Lazy depth-first walk; a directory is listed only when its entries are needed.
+     * Symbolic links are skipped so link loops cannot make the walk endless.
+     */
+    private class TreeWalker {
+        private final String sessionId;
+        private final Deque<RemoteEntry> pendingDirectories = new ArrayDeque<>();
+        private final Deque<RemoteEntry> ready = new ArrayDeque<>();
+
+        private TreeWalker(String sessionId, RemoteEntry root) {
+            this.sessionId = sessionId;
+            this.ready.add(root);
+            this.pendingDirectories.push(root);
+        }
+
+        private RemoteEntry next() throws SftpException, JSchException {
+            while (ready.isEmpty() && !pendingDirectories.isEmpty()) {
+                listChildren(pendingDirectories.pop());
+            }
+            return ready.poll();
+        }
+
+        private void listChildren(RemoteEntry directory) throws SftpException, JSchException {
+            Vector<ChannelSftp.LsEntry> children;
+            try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+                children = lease.getChannel().ls(directory.path);
+            }
+            List<RemoteEntry> subdirectories = new ArrayList<>();
+            children.stream()
+                    .filter(child -> !".".equals(child.getFilename()) && !"..".equals(child.getFilename()))
+                    .sorted(Comparator.comparing(ChannelSftp.LsEntry::getFilename))
+                    .forEach(child -> {
+                        if (child.getAttrs().isLink()) {
+                            log.debug("Skipping symbolic link in archive: {}/{}", directory.path, child.getFilename());
+                            return;
+                        }
+                        RemoteEntry entry = new RemoteEntry(
+                                joinPath(directory.path, child.getFilename()),
+                                directory.archiveName + "/" + child.getFilename(),
+                                child.getAttrs());
+                        ready.add(entry);
+                        if (entry.directory) {
+                            subdirectories.add(entry);
+                        }
+                    });
+            // Push in reverse so subdirectories are visited in name order
+            for (int i = subdirectories.size() - 1; i >= 0; i--) {
+                pendingDirectories.push(subdirectories.get(i));
+            }
+        }
+    }
+
+    /**
+     * Archive writer over zip or tar; entry data is written to the returned stream
+     */
+    private interface ArchiveWriter {
+        void putDirectory(RemoteEntry entry) throws IOException;
+
+        OutputStream putFile(RemoteEntry entry) throws IOException;
+
+        void closeEntry() throws IOException;
+
+        /**
+         * Closes a file entry that received {@code written} bytes, fewer than its walked size
+         */
+        void closeShortEntry(RemoteEntry entry, long written) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    /**
+     * Writes {@code remoteDirectory} and everything below it to {@code outputStream}.
+     * Returns the number of file bytes archived. Stops with a
+     * {@link TransferCancelledException} between entries and chunks once
+     * {@code cancellation} is cancelled.
+     */
+    public long writeArchive(String sessionId, String remoteDirectory, ArchiveFormat format, OutputStream outputStream,
+                             CancellationToken cancellation) throws SftpException, JSchException, IOException {
+        SftpATTRS rootAttrs;
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            rootAttrs = lease.getChannel().stat(remoteDirectory);
+        }
+        if (!rootAttrs.isDir()) {
+            throw new IllegalArgumentException("Not a directory: " + remoteDirectory);
+        }
+
+        String rootPath = trimTrailingSlash(remoteDirectory);
+        TreeWalker walker = new TreeWalker(sessionId, new RemoteEntry(rootPath, getArchiveRootName(rootPath), rootAttrs));
+        ArchiveWriter writer = openWriter(format, new BufferedOutputStream(outputStream, OUTPUT_BUFFER_SIZE));
+        int maxPrefetches = chunkedTransferService.getEffectiveParallelism();
+        int smallFileLimit = chunkedTransferService.getChunkSize();
+
+        Deque<PendingEntry> window = new ArrayDeque<>();
+        int prefetchesInWindow = 0;
+        long files = 0;
+        long shortFiles = 0;
+        long bytes = 0;
+        long startTime = System.nanoTime();
+
+        log.info("Streaming {} archive of {}", format, remoteDirectory);
+        try {
+            boolean walked = false;
+            while (true) {
+                cancellation.throwIfCancelled();
+                // Walk ahead until enough small files are being fetched in the background
+                while (!walked && prefetchesInWindow < maxPrefetches && window.size() < MAX_LOOKAHEAD_ENTRIES) {
+                    RemoteEntry entry = walker.next();
+                    if (entry == null) {
+                        walked = true;
+                        break;
+                    }
+                    Future<SFTPChunkedTransferService.Chunk> prefetched = null;
+                    if (!entry.directory && entry.size > 0 && entry.size <= smallFileLimit) {
+                        prefetched = chunkedTransferService.prefetch(sessionId, entry.path, (int) entry.size);
+                        prefetchesInWindow++;
+                    }
+                    window.add(new PendingEntry(entry, prefetched));
+                }
+
+                PendingEntry pending = window.poll();
+                if (pending == null) {
+                    break;
+                }
+                RemoteEntry entry = pending.entry;
+                if (entry.directory) {
+                    writer.putDirectory(entry);
+                    continue;
+                }
+
+                OutputStream entryStream = writer.putFile(entry);
+                long written = 0;
+                if (pending.prefetched != null) {
+                    prefetchesInWindow--;
+                    try (SFTPChunkedTransferService.Chunk chunk = chunkedTransferService.awaitPrefetch(pending.prefetched)) {
+                        entryStream.write(chunk.bytes(), 0, chunk.length());
+                        written = chunk.length();
+                    }
+                } else if (entry.size > 0) {
+                    written = chunkedTransferService.downloadAvailable(
+                            sessionId, entry.path, 0, entry.size, entryStream, cancellation);
+                }
+                if (written < entry.size) {
+                    log.warn("{} shrank from {} to {} bytes while being archived", entry.path, entry.size, written);
+                    writer.closeShortEntry(entry, written);
+                    shortFiles++;
+                } else {
+                    writer.closeEntry();
+                }
+                files++;
+                bytes += written;
+            }
+            writer.finish();
+        } finally {
+            window.forEach(pending -> {
+                if (pending.prefetched != null) {
+                    chunkedTransferService.discard(pending.prefetched);
+                }
+            });
+        }
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        log.info("Archived {} files ({} bytes, {} short) from {} in {} ms",
+                files, bytes, shortFiles, remoteDirectory, elapsedMs);
+        return bytes;
+    }
+
+    /**
+     * File name offered to the browser for the archive of {@code remoteDirectory}
+     */
+    public String getArchiveFileName(String remoteDirectory, ArchiveFormat format) {
+        return getArchiveRootName(trimTrailingSlash(remoteDirectory)) + format.getExtension();
+    }
+
+    private ArchiveWriter openWriter(ArchiveFormat format, OutputStream outputStream) throws IOException {
+        if (format == ArchiveFormat.ZIP) {
+            ZipOutputStream zip = new ZipOutputStream(outputStream);
+            zip.setLevel(compressionLevel);
+            return new ArchiveWriter() {
+                @Override
+                public void putDirectory(RemoteEntry entry) throws IOException {
+                    zip.putNextEntry(toZipEntry(entry.archiveName + "/", entry));
+                    zip.closeEntry();
+                }
+
+                @Override
+                public OutputStream putFile(RemoteEntry entry) throws IOException {
+                    zip.putNextEntry(toZipEntry(entry.archiveName, entry));
+                    return zip;
+                }
+
+                @Override
+                public void closeEntry() throws IOException {
+                    zip.closeEntry();
+                }
+
+                @Override
+                public void closeShortEntry(RemoteEntry entry, long written) throws IOException {
+                    // Sizes go in the data descriptor, so the entry just ends early
+                    zip.closeEntry();
+                }
+
+                @Override
+                public void finish() throws IOException {
+                    zip.finish();
+                    zip.flush();
+                }
+            };
+        }
+
+        OutputStream tarTarget = outputStream;
+        GZIPOutputStream gzip = null;
+        if (format == ArchiveFormat.TAR_GZ) {
+            gzip = new GZIPOutputStream(outputStream, OUTPUT_BUFFER_SIZE) {
+                {
+                    def.setLevel(compressionLevel);
+                }
+            };
+            tarTarget = gzip;
+        }
+        TarArchiveOutputStream tar = new TarArchiveOutputStream(tarTarget);
+        GZIPOutputStream gzipStream = gzip;
+        return new ArchiveWriter() {
+            @Override
+            public void putDirectory(RemoteEntry entry) throws IOException {
+                tar.putEntry(entry.archiveName, true, 0, entry.permissions, entry.mtime);
+                tar.closeEntry();
+            }
+
+            @Override
+            public OutputStream putFile(RemoteEntry entry) throws IOException {
+                tar.putEntry(entry.archiveName, false, entry.size, entry.permissions, entry.mtime);
+                return tar;
+            }
+
+            @Override
+            public void closeEntry() throws IOException {
+                tar.closeEntry();
+            }
+
+            @Override
+            public void closeShortEntry(RemoteEntry entry, long written) throws IOException {
+                // The header already declared the walked size; fill the rest with zeros
+                for (long missing = entry.size - written; missing > 0; ) {
+                    int length = (int) Math.min(ZERO_PADDING.length, missing);
+                    tar.write(ZERO_PADDING, 0, length);
+                    missing -= length;
+                }
+                tar.closeEntry();
+            }
+
+            @Override
+            public void finish() throws IOException {
+                tar.finish();
+                if (gzipStream != null) {
+                    gzipStream.finish();
+                }
+                outputStream.flush();
+            }
+        };
+    }
+
+    private ZipEntry toZipEntry(String name, RemoteEntry entry) {
+        ZipEntry zipEntry = new ZipEntry(name);
+        if (entry.mtime > 0) {
+            zipEntry.setLastModifiedTime(FileTime.from(entry.mtime, TimeUnit.SECONDS));
+        }
+        return zipEntry;
+    }
+
+    private String getArchiveRootName(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        return name.isEmpty() ? "root" : name;
+    }
+
+    private String trimTrailingSlash(String path) {
+        return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    private String joinPath(String parent, String name) {
+        return parent.endsWith("/") ? parent + name : parent + "/" + name;
+    }
+}
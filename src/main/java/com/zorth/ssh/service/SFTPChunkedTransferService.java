@@ -0,0 +1,490 @@
+package com.zorth.ssh.service;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Splits large SFTP transfers into fixed-size chunks and moves them concurrently
+ * over several pooled channels of the same session.
+ */
+@Slf4j
+@Service
+public class SFTPChunkedTransferService {
+
+    // Any put() mode other than OVERWRITE/RESUME/APPEND makes JSch open the file with
+    // WRITE|CREAT (no TRUNC) and write at exactly the requested offset
+    private static final int MODE_WRITE_AT_OFFSET = 3;
+    private static final int STREAM_BUFFER_SIZE = 8192;
+
+    /**
+     * One chunk's bytes in a buffer borrowed from the pool; closing hands the buffer back
+     */
+    public static final class Chunk implements AutoCloseable {
+        private final TransferBufferPool.Buffer buffer;
+        private final int length;
+        private final boolean endOfFile;
+
+        private Chunk(TransferBufferPool.Buffer buffer, int length) {
+            this(buffer, length, false);
+        }
+
+        private Chunk(TransferBufferPool.Buffer buffer, int length, boolean endOfFile) {
+            this.buffer = buffer;
+            this.length = length;
+            this.endOfFile = endOfFile;
+        }
+
+        public byte[] bytes() {
+            return buffer.bytes();
+        }
+
+        public int length() {
+            return length;
+        }
+
+        /**
+         * True if the file ended, or was gone, before the requested length was read
+         */
+        public boolean isEndOfFile() {
+            return endOfFile;
+        }
+
+        @Override
+        public void close() {
+            buffer.close();
+        }
+    }
+
+    private final SFTPSessionManager sessionManager;
+    private final SFTPTransferTuner transferTuner;
+    private final TransferBufferPool bufferPool;
+    private final ExecutorService transferExecutor;
+
+    @Value("${sftp.transfer.chunk-size:4194304}")
+    private int chunkSize;
+
+    @Value("${sftp.transfer.parallelism:4}")
+    private int parallelism;
+
+    @Value("${sftp.transfer.parallel-threshold:16777216}")
+    private long parallelThreshold;
+
+    @Value("${sftp.transfer.parallel-enabled:true}")
+    private boolean parallelEnabled;
+
+    public SFTPChunkedTransferService(SFTPSessionManager sessionManager,
+                                      SFTPTransferTuner transferTuner,
+                                      TransferBufferPool bufferPool,
+                                      @Value("${sftp.transfer.executor-threads:32}") int executorThreads) {
+        this.sessionManager = sessionManager;
+        this.transferTuner = transferTuner;
+        this.bufferPool = bufferPool;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.transferExecutor = Executors.newFixedThreadPool(executorThreads, runnable -> {
+            Thread thread = new Thread(runnable, "sftp-transfer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Whether a transfer of the given size should be split into parallel chunks
+     */
+    public boolean shouldUseParallel(long size) {
+        return parallelEnabled && size >= parallelThreshold && getEffectiveParallelism() > 1;
+    }
+
+    /**
+     * Downloads {@code length} bytes starting at {@code offset}. Chunks are fetched
+     * out of order on several channels and written to the output stream in order;
+     * at most one chunk per worker is buffered at a time.
+     */
+    public void download(String sessionId, String remotePath, long offset, long length, OutputStream outputStream)
+            throws IOException {
+        download(sessionId, remotePath, offset, length, outputStream, CancellationToken.NONE);
+    }
+
+    /**
+     * As {@link #download(String, String, long, long, OutputStream)}, stopping between
+     * chunks once {@code cancellation} is cancelled; in-flight chunk reads are interrupted
+     */
+    public void download(String sessionId, String remotePath, long offset, long length, OutputStream outputStream,
+                         CancellationToken cancellation) throws IOException {
+        copyChunks(sessionId, remotePath, offset, length, outputStream, cancellation, false);
+    }
+
+    /**
+     * As {@link #download(String, String, long, long, OutputStream, CancellationToken)}
+     * for a file that may have shrunk or disappeared since its size was read: copies what
+     * is there and returns the number of bytes written instead of failing
+     */
+    public long downloadAvailable(String sessionId, String remotePath, long offset, long length,
+                                  OutputStream outputStream, CancellationToken cancellation) throws IOException {
+        return copyChunks(sessionId, remotePath, offset, length, outputStream, cancellation, true);
+    }
+
+    private long copyChunks(String sessionId, String remotePath, long offset, long length, OutputStream outputStream,
+                            CancellationToken cancellation, boolean allowShort) throws IOException {
+        int window = getEffectiveParallelism();
+        long end = offset + length;
+        long next = offset;
+        long written = 0;
+        Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+
+        log.info("Parallel download of {} bytes [{}-{}) from {} using {} channels", length, offset, end, remotePath, window);
+
+        try {
+            while (next < end || !inFlight.isEmpty()) {
+                cancellation.throwIfCancelled();
+                while (next < end && inFlight.size() < window) {
+                    long chunkOffset = next;
+                    int chunkLength = (int) Math.min(chunkSize, end - next);
+                    inFlight.add(transferExecutor.submit(
+                            () -> readRange(sessionId, remotePath, chunkOffset, chunkLength, allowShort)));
+                    next += chunkLength;
+                }
+                try (Chunk chunk = awaitChunk(inFlight.poll())) {
+                    outputStream.write(chunk.bytes(), 0, chunk.length());
+                    written += chunk.length();
+                    if (chunk.isEndOfFile()) {
+                        break;
+                    }
+                }
+            }
+            outputStream.flush();
+            return written;
+        } finally {
+            inFlight.forEach(this::discard);
+        }
+    }
+
+    /**
+     * Uploads the stream to a hidden temp file next to {@code remotePath}, writing
+     * chunks concurrently at their offsets, then renames it into place. The source
+     * stream is read sequentially; at most one chunk per worker is buffered.
+     */
+    public void upload(String sessionId, InputStream inputStream, String remotePath)
+            throws IOException, SftpException, JSchException {
+        upload(sessionId, inputStream, remotePath, CancellationToken.NONE);
+    }
+
+    /**
+     * As {@link #upload(String, InputStream, String)}, stopping between chunks once
+     * {@code cancellation} is cancelled; the temp file is removed as on any failure
+     */
+    public void upload(String sessionId, InputStream inputStream, String remotePath, CancellationToken cancellation)
+            throws IOException, SftpException, JSchException {
+        String tempPath = getTempPath(remotePath);
+        int window = getEffectiveParallelism();
+        Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        boolean completed = false;
+
+        log.info("Parallel upload to {} via {} using {} channels", remotePath, tempPath, window);
+
+        try {
+            createEmpty(sessionId, tempPath);
+
+            long offset = 0;
+            while (true) {
+                cancellation.throwIfCancelled();
+                TransferBufferPool.Buffer buffer = bufferPool.acquire(chunkSize);
+                int length;
+                try {
+                    length = inputStream.readNBytes(buffer.bytes(), 0, chunkSize);
+                } catch (IOException | RuntimeException e) {
+                    buffer.close();
+                    throw e;
+                }
+                if (length == 0) {
+                    buffer.close();
+                    break;
+                }
+                if (inFlight.size() >= window) {
+                    awaitChunk(inFlight.poll()).close();
+                }
+                long chunkOffset = offset;
+                Chunk chunk = new Chunk(buffer, length);
+                inFlight.add(transferExecutor.submit(() -> writeRange(sessionId, tempPath, chunkOffset, chunk)));
+                offset += length;
+            }
+            while (!inFlight.isEmpty()) {
+                awaitChunk(inFlight.poll()).close();
+            }
+            cancellation.throwIfCancelled();
+
+            moveIntoPlace(sessionId, tempPath, remotePath);
+            completed = true;
+            log.info("Parallel upload of {} bytes to {} finished", offset, remotePath);
+        } finally {
+            inFlight.forEach(this::discard);
+            if (!completed) {
+                removeQuietly(sessionId, tempPath);
+            }
+        }
+    }
+
+    /**
+     * Creates (or truncates) an empty remote file
+     */
+    public void createEmpty(String sessionId, String remotePath) throws IOException, SftpException, JSchException {
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            lease.getChannel().put(remotePath, ChannelSftp.OVERWRITE).close();
+        }
+    }
+
+    /**
+     * Streams the input into an existing remote file starting at {@code offset},
+     * without truncating what is already there. Returns the number of bytes written.
+     * Input longer than {@code maxBytes} is rejected once the limit has been written.
+     */
+    public long writeAt(String sessionId, String remotePath, long offset, InputStream inputStream, long maxBytes)
+            throws IOException, SftpException, JSchException {
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            long written = 0;
+            boolean readingSource = false;
+            try (TransferBufferPool.Buffer pooled = bufferPool.acquire(STREAM_BUFFER_SIZE);
+                 OutputStream outputStream = lease.getChannel().put(remotePath, null, MODE_WRITE_AT_OFFSET, offset)) {
+                byte[] buffer = pooled.bytes();
+                while (written < maxBytes) {
+                    readingSource = true;
+                    int bytesRead = inputStream.read(buffer, 0, (int) Math.min(buffer.length, maxBytes - written));
+                    readingSource = false;
+                    if (bytesRead == -1) {
+                        break;
+                    }
+                    outputStream.write(buffer, 0, bytesRead);
+                    written += bytesRead;
+                }
+                readingSource = true;
+                boolean longer = written >= maxBytes && inputStream.read() != -1;
+                readingSource = false;
+                if (longer) {
+                    throw new IllegalArgumentException("Chunk at " + offset + " is longer than " + maxBytes + " bytes");
+                }
+            } catch (IOException e) {
+                // A client dropping mid-chunk leaves the channel usable; only a failed SFTP write or close does not
+                if (!readingSource || e.getSuppressed().length > 0) {
+                    lease.invalidate();
+                }
+                throw e;
+            }
+            return written;
+        }
+    }
+
+    /**
+     * Renames a finished temp file over its final path
+     */
+    public void moveIntoPlace(String sessionId, String tempPath, String remotePath) throws SftpException, JSchException {
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            moveIntoPlace(lease.getChannel(), tempPath, remotePath);
+        }
+    }
+
+    /**
+     * Removes a file on the transfer executor, for callers that must not block on the server
+     */
+    public void removeQuietlyAsync(String sessionId, String remotePath) {
+        transferExecutor.execute(() -> removeQuietly(sessionId, remotePath));
+    }
+
+    public void removeQuietly(String sessionId, String remotePath) {
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            lease.getChannel().rm(remotePath);
+        } catch (Exception e) {
+            log.debug("Could not remove temp file {}: {}", remotePath, e.getMessage());
+        }
+    }
+
+    private Chunk writeRange(String sessionId, String remotePath, long offset, Chunk chunk) throws Exception {
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            try (OutputStream outputStream = lease.getChannel().put(remotePath, null, MODE_WRITE_AT_OFFSET, offset)) {
+                outputStream.write(chunk.bytes(), 0, chunk.length());
+            } catch (IOException e) {
+                lease.invalidate();
+                throw e;
+            }
+            return chunk;
+        }
+    }
+
+    /**
+     * Renames the temp file over the target. JSch uses posix-rename@openssh.com when the
+     * server offers it, which replaces atomically; plain SFTP rename refuses to overwrite,
+     * so fall back to removing the old file first.
+     */
+    private void moveIntoPlace(ChannelSftp sftpChannel, String tempPath, String remotePath) throws SftpException {
+        try {
+            sftpChannel.rename(tempPath, remotePath);
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE || e.id == ChannelSftp.SSH_FX_PERMISSION_DENIED) {
+                throw e;
+            }
+            log.debug("Rename over existing {} failed ({}), removing target and retrying", remotePath, e.getMessage());
+            sftpChannel.rm(remotePath);
+            sftpChannel.rename(tempPath, remotePath);
+        }
+    }
+
+    /**
+     * Hidden, unique sibling path used while a file is being assembled
+     */
+    public String getTempPath(String remotePath) {
+        int lastSlash = remotePath.lastIndexOf('/');
+        String parent = remotePath.substring(0, lastSlash + 1);
+        String name = remotePath.substring(lastSlash + 1);
+        return parent + "." + name + "." + UUID.randomUUID().toString().substring(0, 8) + ".part";
+    }
+
+    /**
+     * Copies a remote file to another path of the same session one chunk at a time.
+     * Each chunk is read on one pooled channel and written on another, and only one
+     * channel is held at any moment, so many copies can run side by side without
+     * starving each other of channels. Stops early when {@code cancelled} turns true.
+     * Returns the number of bytes copied.
+     */
+    public long copyFile(String sessionId, String sourcePath, String targetPath, long size,
+                         LongConsumer onBytesCopied, BooleanSupplier cancelled)
+            throws IOException, SftpException, JSchException {
+        createEmpty(sessionId, targetPath);
+        long copied = 0;
+        while (copied < size && !cancelled.getAsBoolean()) {
+            int length = (int) Math.min(chunkSize, size - copied);
+            try (Chunk chunk = readRange(sessionId, sourcePath, copied, length, false)) {
+                writeRange(sessionId, targetPath, copied, chunk);
+            } catch (IOException | SftpException | JSchException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Copy of " + sourcePath + " failed: " + e.getMessage(), e);
+            }
+            copied += length;
+            onBytesCopied.accept(length);
+        }
+        return copied;
+    }
+
+    /**
+     * Reads a whole small file in the background on a pooled channel, so a sequential
+     * consumer can work ahead of the current file. Collect the result with {@link #awaitPrefetch}.
+     * A file that turns out shorter than {@code length}, or gone, yields a short chunk.
+     */
+    public Future<Chunk> prefetch(String sessionId, String remotePath, int length) {
+        return transferExecutor.submit(() -> readRange(sessionId, remotePath, 0, length, true));
+    }
+
+    /**
+     * Result of {@link #prefetch}; the caller closes the chunk once its bytes are written
+     */
+    public Chunk awaitPrefetch(Future<Chunk> future) throws IOException {
+        return awaitChunk(future);
+    }
+
+    /**
+     * Cancels a chunk that will not be used, returning its buffer if it was already read
+     */
+    public void discard(Future<Chunk> future) {
+        if (!future.cancel(true) && future.isDone()) {
+            try {
+                future.get().close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | CancellationException e) {
+                // nothing was borrowed
+            }
+        }
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Reads {@code length} bytes at {@code offset}. With {@code allowShort}, a file that
+     * ends early or no longer exists gives a chunk marked end-of-file instead of an error.
+     */
+    private Chunk readRange(String sessionId, String remotePath, long offset, int length, boolean allowShort)
+            throws Exception {
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            ChannelSftp sftpChannel = lease.getChannel();
+            sftpChannel.setBulkRequests(transferTuner.bulkRequestsFor(sessionId, length));
+            TransferBufferPool.Buffer buffer = bufferPool.acquire(length);
+            byte[] chunk = buffer.bytes();
+            Chunk result = null;
+            try (InputStream inputStream = sftpChannel.get(remotePath, null, offset)) {
+                int filled = 0;
+                while (filled < length) {
+                    int bytesRead = inputStream.read(chunk, filled, length - filled);
+                    if (bytesRead == -1) {
+                        if (allowShort) {
+                            break;
+                        }
+                        throw new IOException("Unexpected end of file at offset " + (offset + filled) + ": " + remotePath);
+                    }
+                    filled += bytesRead;
+                }
+                result = new Chunk(buffer, filled, filled < length);
+            } catch (SftpException e) {
+                if (!allowShort || e.id != ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                    throw e;
+                }
+                result = new Chunk(buffer, 0, true);
+            } catch (IOException e) {
+                lease.invalidate();
+                throw e;
+            } finally {
+                if (result == null) {
+                    buffer.close();
+                }
+            }
+            return result;
+        }
+    }
+
+    private Chunk awaitChunk(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for chunk");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Chunk transfer failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Number of channels a single transfer may use at once
+     */
+    public int getEffectiveParallelism() {
+        return Math.max(1, Math.min(parallelism, sessionManager.getMaxChannelsPerSession()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        transferExecutor.shutdownNow();
+    }
+}
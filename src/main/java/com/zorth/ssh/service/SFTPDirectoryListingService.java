@@ -0,0 +1,230 @@
+package com.zorth.ssh.service;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import com.zorth.ssh.dto.SFTPFileInfo;
+import com.zorth.ssh.dto.SFTPFilePage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.regex.Pattern;
+
+/**
+ * Listing of very large directories without holding the whole directory in memory.
+ * Entries are consumed one at a time through an LsEntrySelector while JSch reads them
+ * off the wire. Pages keep only the best {@code limit + 1} entries in a bounded heap,
+ * and the cursor is the sort key of the last returned entry, so every page costs one
+ * directory scan but O(limit) memory.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SFTPDirectoryListingService {
+
+    private final SFTPSessionManager sessionManager;
+    private final SFTPService sftpService;
+
+    @Value("${sftp.listing.max-page-size:5000}")
+    private int maxPageSize;
+
+    public enum SortField {
+        NAME, SIZE, MTIME
+    }
+
+    /**
+     * Receives streamed entries; returning false stops the listing
+     */
+    public interface ListingSink {
+        boolean accept(SFTPFileInfo file) throws IOException;
+    }
+
+    /**
+     * Sort key of an entry: directories first, then the sort field, then the name
+     */
+    private static class ListingKey {
+        private final boolean directory;
+        private final long value;
+        private final String name;
+
+        private ListingKey(boolean directory, long value, String name) {
+            this.directory = directory;
+            this.value = value;
+            this.name = name;
+        }
+    }
+
+    private static class Candidate {
+        private final ListingKey key;
+        private final ChannelSftp.LsEntry entry;
+
+        private Candidate(ListingKey key, ChannelSftp.LsEntry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Returns one page of {@code remotePath} ordered by {@code sortField}, starting after {@code cursor}
+     */
+    public SFTPFilePage listPage(String sessionId, String remotePath, int limit, String cursor,
+                                 SortField sortField, boolean descending, String nameFilter)
+            throws SftpException, JSchException {
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        Comparator<ListingKey> order = buildOrder(descending);
+        ListingKey after = cursor != null && !cursor.isEmpty() ? decodeCursor(cursor) : null;
+        Pattern filter = compileFilter(nameFilter);
+
+        // Worst candidate on top so it can be dropped once the heap is over capacity
+        PriorityQueue<Candidate> best = new PriorityQueue<>((a, b) -> order.compare(b.key, a.key));
+        long[] matched = new long[1];
+
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            lease.getChannel().ls(remotePath, entry -> {
+                if (!isListable(entry, filter)) {
+                    return ChannelSftp.LsEntrySelector.CONTINUE;
+                }
+                matched[0]++;
+                ListingKey key = toKey(entry, sortField);
+                if (after != null && order.compare(key, after) <= 0) {
+                    return ChannelSftp.LsEntrySelector.CONTINUE;
+                }
+                if (best.size() <= pageSize || order.compare(key, best.peek().key) < 0) {
+                    best.add(new Candidate(key, entry));
+                    if (best.size() > pageSize + 1) {
+                        best.poll();
+                    }
+                }
+                return ChannelSftp.LsEntrySelector.CONTINUE;
+            });
+        }
+
+        boolean hasMore = best.size() > pageSize;
+        if (hasMore) {
+            best.poll();
+        }
+        List<Candidate> page = new ArrayList<>(best);
+        page.sort((a, b) -> order.compare(a.key, b.key));
+
+        List<SFTPFileInfo> files = new ArrayList<>(page.size());
+        for (Candidate candidate : page) {
+            files.add(sftpService.convertToFileInfo(candidate.entry, remotePath));
+        }
+        String nextCursor = hasMore ? encodeCursor(page.get(page.size() - 1).key) : null;
+
+        log.debug("Listed page of {} entries from {} ({} matching)", files.size(), remotePath, matched[0]);
+        return new SFTPFilePage(remotePath, files, nextCursor, matched[0]);
+    }
+
+    /**
+     * Hands every entry of {@code remotePath} to {@code sink} in server order as it is read.
+     * Returns the number of entries delivered.
+     */
+    public long streamListing(String sessionId, String remotePath, String nameFilter, ListingSink sink)
+            throws SftpException, JSchException, IOException {
+        Pattern filter = compileFilter(nameFilter);
+        long[] delivered = new long[1];
+        IOException[] sinkError = new IOException[1];
+
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            lease.getChannel().ls(remotePath, entry -> {
+                if (!isListable(entry, filter)) {
+                    return ChannelSftp.LsEntrySelector.CONTINUE;
+                }
+                try {
+                    if (!sink.accept(sftpService.convertToFileInfo(entry, remotePath))) {
+                        return ChannelSftp.LsEntrySelector.BREAK;
+                    }
+                    delivered[0]++;
+                    return ChannelSftp.LsEntrySelector.CONTINUE;
+                } catch (IOException e) {
+                    sinkError[0] = e;
+                    return ChannelSftp.LsEntrySelector.BREAK;
+                }
+            });
+        }
+
+        if (sinkError[0] != null) {
+            throw sinkError[0];
+        }
+        return delivered[0];
+    }
+
+    private boolean isListable(ChannelSftp.LsEntry entry, Pattern filter) {
+        String name = entry.getFilename();
+        if (".".equals(name) || "..".equals(name)) {
+            return false;
+        }
+        return filter == null || filter.matcher(name).matches();
+    }
+
+    private ListingKey toKey(ChannelSftp.LsEntry entry, SortField sortField) {
+        SftpATTRS attrs = entry.getAttrs();
+        long value = switch (sortField) {
+            case SIZE -> attrs.getSize();
+            case MTIME -> attrs.getMTime() & 0xFFFFFFFFL;
+            case NAME -> 0L;
+        };
+        return new ListingKey(attrs.isDir(), value, entry.getFilename());
+    }
+
+    private Comparator<ListingKey> buildOrder(boolean descending) {
+        Comparator<ListingKey> byValue = Comparator.<ListingKey>comparingLong(key -> key.value)
+                .thenComparing(key -> key.name);
+        if (descending) {
+            byValue = byValue.reversed();
+        }
+        return Comparator.<ListingKey, Boolean>comparing(key -> !key.directory).thenComparing(byValue);
+    }
+
+    private String encodeCursor(ListingKey key) {
+        String raw = (key.directory ? "d" : "f") + ":" + key.value + ":" + key.name;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private ListingKey decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", 3);
+            return new ListingKey("d".equals(parts[0]), Long.parseLong(parts[1]), parts[2]);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid listing cursor: " + cursor);
+        }
+    }
+
+    /**
+     * Compiles a case-insensitive glob ({@code *} and {@code ?}) matched against entry names
+     */
+    private Pattern compileFilter(String glob) {
+        if (glob == null || glob.isEmpty()) {
+            return null;
+        }
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL);
+    }
+}
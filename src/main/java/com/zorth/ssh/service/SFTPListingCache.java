@@ -0,0 +1,152 @@
+package com.zorth.ssh.service;
+
+import com.zorth.ssh.dto.SFTPFileInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-session cache of directory listings keyed by path.
+ * Entries remember the directory mtime they were read at; a lookup only hits when the
+ * caller's freshly stat'ed mtime still matches. Our own mutations invalidate eagerly,
+ * which also covers changes made within the one-second mtime resolution.
+ *
+ * <p>A hit therefore still costs one stat round trip; it saves the readdir requests of a
+ * full listing, not the round trip itself. Writing to a file in place does not move its
+ * directory's mtime, so entries also expire after {@code max-age-ms} to bound how long
+ * stale sizes and times can be served.
+ */
+@Slf4j
+@Component
+public class SFTPListingCache {
+
+    private static class CachedListing {
+        private final int mtime;
+        private final List<SFTPFileInfo> files;
+        private final long cachedAtNanos = System.nanoTime();
+
+        private CachedListing(int mtime, List<SFTPFileInfo> files) {
+            this.mtime = mtime;
+            this.files = files;
+        }
+    }
+
+    private final ConcurrentMap<String, Map<String, CachedListing>> listingsBySession = new ConcurrentHashMap<>();
+
+    @Value("${sftp.listing-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${sftp.listing-cache.max-entries-per-session:256}")
+    private int maxEntriesPerSession;
+
+    @Value("${sftp.listing-cache.max-age-ms:5000}")
+    private long maxAgeMs;
+
+    /**
+     * Returns the cached listing of {@code path} if it was taken at directory mtime {@code mtime}
+     */
+    public List<SFTPFileInfo> get(String sessionId, String path, int mtime) {
+        if (!enabled) {
+            return null;
+        }
+        Map<String, CachedListing> listings = listingsBySession.get(sessionId);
+        if (listings == null) {
+            return null;
+        }
+        synchronized (listings) {
+            CachedListing cached = listings.get(normalize(path));
+            if (cached == null) {
+                return null;
+            }
+            if (cached.mtime != mtime
+                    || System.nanoTime() - cached.cachedAtNanos > TimeUnit.MILLISECONDS.toNanos(maxAgeMs)) {
+                listings.remove(normalize(path));
+                return null;
+            }
+            return cached.files;
+        }
+    }
+
+    /**
+     * Stores a listing. A further change within the second of the directory's mtime
+     * would not move it, so the listing is only cached once the server has shown a
+     * later time: some child was modified after the directory. This uses the server's
+     * clock only, so skew against the local clock does not matter.
+     *
+     * @param newestChildMtime latest mtime among the listed entries
+     */
+    public void put(String sessionId, String path, int mtime, int newestChildMtime, List<SFTPFileInfo> files) {
+        if (!enabled || mtime >= newestChildMtime) {
+            return;
+        }
+        Map<String, CachedListing> listings = listingsBySession.computeIfAbsent(sessionId, id -> newSessionListings());
+        synchronized (listings) {
+            listings.put(normalize(path), new CachedListing(mtime, List.copyOf(files)));
+        }
+    }
+
+    /**
+     * Drops the listing of {@code path} and of its parent directory
+     */
+    public void invalidate(String sessionId, String path) {
+        Map<String, CachedListing> listings = listingsBySession.get(sessionId);
+        if (listings == null) {
+            return;
+        }
+        String normalized = normalize(path);
+        synchronized (listings) {
+            listings.remove(normalized);
+            listings.remove(getParentPath(normalized));
+        }
+    }
+
+    /**
+     * Drops {@code path} and every cached directory below it, e.g. after a directory rename
+     */
+    public void invalidateTree(String sessionId, String path) {
+        Map<String, CachedListing> listings = listingsBySession.get(sessionId);
+        if (listings == null) {
+            return;
+        }
+        String normalized = normalize(path);
+        String prefix = normalized.equals("/") ? "/" : normalized + "/";
+        synchronized (listings) {
+            listings.keySet().removeIf(key -> key.equals(normalized) || key.startsWith(prefix));
+            listings.remove(getParentPath(normalized));
+        }
+    }
+
+    public void evictSession(String sessionId) {
+        if (listingsBySession.remove(sessionId) != null) {
+            log.debug("Dropped listing cache for SFTP session: {}", sessionId);
+        }
+    }
+
+    private Map<String, CachedListing> newSessionListings() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedListing> eldest) {
+                return size() > maxEntriesPerSession;
+            }
+        };
+    }
+
+    private String normalize(String path) {
+        if (path.length() > 1 && path.endsWith("/")) {
+            return path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    private String getParentPath(String path) {
+        int lastSlash = path.lastIndexOf('/');
+        return lastSlash > 0 ? path.substring(0, lastSlash) : "/";
+    }
+}
@@ -0,0 +1,209 @@
+package com.zorth.ssh.service;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies a file from one SSH profile to another entirely inside the backend.
+ * A reader task streams the source over one SFTP session while the job thread writes
+ * the previous buffer to the target over another, so the two WAN legs overlap. The
+ * target is written to a temp file and renamed into place when complete. The job
+ * waits for a TransferScheduler slot charged to both hosts before it starts.
+ */
+@Slf4j
+@Service
+public class SFTPServerTransferService {
+
+    private final SFTPService sftpService;
+    private final SFTPSessionManager sessionManager;
+    private final SFTPChunkedTransferService chunkedTransferService;
+    private final TransferProgressTracker progressTracker;
+    private final TransferScheduler transferScheduler;
+    private final ExecutorService relayExecutor;
+
+    @Value("${sftp.relay.buffer-size:1048576}")
+    private int bufferSize;
+
+    @Value("${sftp.relay.buffers:2}")
+    private int bufferCount;
+
+    /**
+     * A filled buffer handed from the reader to the writer; {@code length == -1} marks the end
+     */
+    private static class Chunk {
+        private static final Chunk END = new Chunk(null, -1);
+
+        private final byte[] data;
+        private final int length;
+
+        private Chunk(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    public SFTPServerTransferService(SFTPService sftpService, SFTPSessionManager sessionManager,
+                                     SFTPChunkedTransferService chunkedTransferService,
+                                     TransferProgressTracker progressTracker,
+                                     TransferScheduler transferScheduler) {
+        this.sftpService = sftpService;
+        this.sessionManager = sessionManager;
+        this.chunkedTransferService = chunkedTransferService;
+        this.progressTracker = progressTracker;
+        this.transferScheduler = transferScheduler;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.relayExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "sftp-relay-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts copying {@code sourcePath} on one profile to {@code targetPath} on another.
+     * A target ending in "/" receives the source file name. Returns the target path.
+     */
+    public String startTransfer(Long sourceProfileId, String sourcePath, Long targetProfileId, String targetPath,
+                                String transferId) throws SftpException, JSchException {
+        String sourceSessionId = sftpService.connect(sourceProfileId);
+        String targetSessionId = sftpService.connect(targetProfileId);
+        SftpATTRS attrs = sftpService.statFile(sourceSessionId, sourcePath);
+        if (attrs.isDir()) {
+            throw new IllegalArgumentException("Server-to-server transfer copies single files: " + sourcePath);
+        }
+        String fileName = sourcePath.substring(sourcePath.lastIndexOf('/') + 1);
+        String effectiveTarget = targetPath.endsWith("/") ? targetPath + fileName : targetPath;
+
+        progressTracker.startTransfer(transferId, fileName, "SERVER_COPY", attrs.getSize());
+        // Recorded against the target, where the copied bytes end up
+        progressTracker.describeTransfer(transferId, targetSessionId, effectiveTarget);
+        log.info("Starting server-to-server transfer {}: profile {}:{} -> profile {}:{}",
+                transferId, sourceProfileId, sourcePath, targetProfileId, effectiveTarget);
+
+        transferScheduler.submit(transferId, List.of(sourceSessionId, targetSessionId), attrs.getSize(), () ->
+                relay(sourceSessionId, sourcePath, targetSessionId, effectiveTarget, transferId));
+        return effectiveTarget;
+    }
+
+    private void relay(String sourceSessionId, String sourcePath, String targetSessionId, String targetPath,
+                       String transferId) throws Exception {
+        BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(Math.max(2, bufferCount));
+        BlockingQueue<Chunk> filledBuffers = new ArrayBlockingQueue<>(Math.max(2, bufferCount) + 1);
+        for (int i = 0; i < Math.max(2, bufferCount); i++) {
+            freeBuffers.add(new byte[bufferSize]);
+        }
+
+        CancellationToken cancellation = progressTracker.getCancellationToken(transferId);
+        String tempPath = chunkedTransferService.getTempPath(targetPath);
+        Future<?> reader = relayExecutor.submit(() ->
+                readSource(sourceSessionId, sourcePath, cancellation, freeBuffers, filledBuffers));
+        boolean completed = false;
+        long transferred = 0;
+
+        try (SFTPSessionManager.ChannelLease targetLease = sessionManager.borrowChannel(targetSessionId)) {
+            CancellationToken.Registration abortOnCancel = cancellation.onCancel(targetLease::abort);
+            try {
+                try (OutputStream out = targetLease.getChannel().put(tempPath, ChannelSftp.OVERWRITE)) {
+                    while (!cancellation.isCancelled()) {
+                        Chunk chunk = filledBuffers.take();
+                        if (chunk == Chunk.END) {
+                            break;
+                        }
+                        out.write(chunk.data, 0, chunk.length);
+                        freeBuffers.put(chunk.data);
+                        transferScheduler.throttle(transferId, chunk.length);
+                        transferred += chunk.length;
+                        progressTracker.updateProgress(transferId, transferred);
+                    }
+                } catch (IOException | InterruptedException e) {
+                    targetLease.invalidate();
+                    if (!cancellation.isCancelled()) {
+                        throw e;
+                    }
+                }
+
+                if (cancellation.isCancelled()) {
+                    log.info("Server-to-server transfer {} cancelled after {} bytes", transferId, transferred);
+                    return;
+                }
+                reader.get(); // surfaces read failures
+                chunkedTransferService.moveIntoPlace(targetSessionId, tempPath, targetPath);
+                completed = true;
+            } finally {
+                abortOnCancel.close();
+            }
+        } finally {
+            reader.cancel(true);
+            if (!completed) {
+                chunkedTransferService.removeQuietly(targetSessionId, tempPath);
+            }
+        }
+
+        sftpService.invalidateListing(targetSessionId, targetPath);
+        progressTracker.completeTransfer(transferId);
+        log.info("Server-to-server transfer {} finished ({} bytes)", transferId, transferred);
+    }
+
+    /**
+     * Fills free buffers from the source and queues them for the writer, always ending
+     * the stream with {@link Chunk#END} so the writer never waits forever. Cancellation
+     * disconnects the source channel, so a read blocked on the server ends at once.
+     */
+    private Void readSource(String sessionId, String sourcePath, CancellationToken cancellation,
+                            BlockingQueue<byte[]> freeBuffers, BlockingQueue<Chunk> filledBuffers) throws Exception {
+        try (SFTPSessionManager.ChannelLease sourceLease = sessionManager.borrowChannel(sessionId)) {
+            CancellationToken.Registration abortOnCancel = cancellation.onCancel(sourceLease::abort);
+            try {
+                try (InputStream in = sourceLease.getChannel().get(sourcePath)) {
+                    while (!cancellation.isCancelled()) {
+                        byte[] buffer = freeBuffers.take();
+                        int length = in.readNBytes(buffer, 0, buffer.length);
+                        if (length == 0) {
+                            break;
+                        }
+                        filledBuffers.put(new Chunk(buffer, length));
+                        if (length < buffer.length) {
+                            break;
+                        }
+                    }
+                } catch (IOException | InterruptedException e) {
+                    sourceLease.invalidate();
+                    if (e instanceof InterruptedException) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Source read interrupted");
+                    }
+                    cancellation.throwIfCancelled();
+                    throw e;
+                }
+                return null;
+            } finally {
+                abortOnCancel.close();
+            }
+        } finally {
+            filledBuffers.offer(Chunk.END);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        relayExecutor.shutdownNow();
+    }
+}
@@ -2,23 +2,30 @@ package com.zorth.ssh.service;
 
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
+import com.zorth.ssh.dto.ExecResult;
 import com.zorth.ssh.dto.SFTPFileInfo;
 import com.zorth.ssh.entity.SSHProfile;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.UUID;
 import java.util.Vector;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -28,6 +35,12 @@ public class SFTPService {
     private final SSHProfileService sshProfileService;
     private final SFTPSessionManager sessionManager;
     private final TransferProgressTracker progressTracker;
+    private final SFTPChunkedTransferService chunkedTransferService;
+    private final SFTPListingCache listingCache;
+    private final SSHExecService execService;
+    private final TransferScheduler transferScheduler;
+    private final SFTPTransferTuner transferTuner;
+    private final TransferBufferPool bufferPool;
     
     /**
      * Establishes an SFTP connection using stored credentials
@@ -39,18 +52,41 @@ public class SFTPService {
     
     /**
      * Lists files and directories in a given path on the target server
+     * Served from the listing cache when the directory mtime is unchanged
      */
-    public List<SFTPFileInfo> listFiles(String sessionId, String remotePath) throws SftpException {
-        ChannelSftp sftpChannel = sessionManager.getChannel(sessionId);
-        
+    public List<SFTPFileInfo> listFiles(String sessionId, String remotePath) throws SftpException, JSchException {
         log.info("Listing files in path: {}", remotePath);
         
-        Vector<ChannelSftp.LsEntry> fileList = sftpChannel.ls(remotePath);
+        Vector<ChannelSftp.LsEntry> fileList;
+        int mtime;
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            mtime = lease.getChannel().stat(remotePath).getMTime();
+            List<SFTPFileInfo> cached = listingCache.get(sessionId, remotePath, mtime);
+            if (cached != null) {
+                log.debug("Listing cache hit for path: {}", remotePath);
+                return cached;
+            }
+            fileList = lease.getChannel().ls(remotePath);
+        }
         
-        return fileList.stream()
-                .filter(entry -> !".".equals(entry.getFilename()) && !"..".equals(entry.getFilename()))
-                .map(entry -> convertToFileInfo(entry, remotePath))
-                .collect(Collectors.toList());
+        List<SFTPFileInfo> files = new ArrayList<>(fileList.size());
+        int newestChildMtime = Integer.MIN_VALUE;
+        for (ChannelSftp.LsEntry entry : fileList) {
+            if (".".equals(entry.getFilename()) || "..".equals(entry.getFilename())) {
+                continue;
+            }
+            files.add(convertToFileInfo(entry, remotePath));
+            newestChildMtime = Math.max(newestChildMtime, entry.getAttrs().getMTime());
+        }
+        listingCache.put(sessionId, remotePath, mtime, newestChildMtime, files);
+        return files;
+    }
+    
+    /**
+     * Forgets cached listings affected by a change to {@code remotePath}
+     */
+    public void invalidateListing(String sessionId, String remotePath) {
+        listingCache.invalidate(sessionId, remotePath);
     }
     
     /**
@@ -58,37 +94,69 @@ public class SFTPService {
      * Simple version without progress tracking for browser downloads
      */
     public void downloadFile(String sessionId, String remotePath, OutputStream outputStream) 
-            throws SftpException, IOException {
-        ChannelSftp sftpChannel = sessionManager.getChannel(sessionId);
-        
+            throws SftpException, JSchException, IOException {
         log.info("Downloading file: {}", remotePath);
         
-        try (InputStream inputStream = sftpChannel.get(remotePath)) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
-            }
-            outputStream.flush();
+        long fileSize = getFileSize(sessionId, remotePath);
+        if (chunkedTransferService.shouldUseParallel(fileSize)) {
+            chunkedTransferService.download(sessionId, remotePath, 0, fileSize, outputStream);
+        } else {
+            copyFromRemote(sessionId, remotePath, outputStream);
         }
         
         log.info("Successfully downloaded file: {}", remotePath);
     }
     
+    /**
+     * Downloads {@code length} bytes of a file starting at {@code offset}
+     * Used for HTTP Range requests
+     */
+    public void downloadRange(String sessionId, String remotePath, long offset, long length, OutputStream outputStream)
+            throws SftpException, JSchException, IOException {
+        log.debug("Downloading range [{}-{}) of file: {}", offset, offset + length, remotePath);
+        
+        if (chunkedTransferService.shouldUseParallel(length)) {
+            chunkedTransferService.download(sessionId, remotePath, offset, length, outputStream);
+            return;
+        }
+        
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            SFTPTransferTuner.Settings settings = transferTuner.tune(sessionId, lease.getChannel(), length);
+            long start = System.nanoTime();
+            try (TransferBufferPool.Buffer pooled = bufferPool.acquire(settings.bufferSize());
+                 InputStream inputStream = lease.getChannel().get(remotePath, null, offset)) {
+                byte[] buffer = pooled.bytes();
+                long remaining = length;
+                long sftpNanos = 0;
+                while (remaining > 0) {
+                    long readStart = System.nanoTime();
+                    int bytesRead = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    sftpNanos += System.nanoTime() - readStart;
+                    if (bytesRead == -1) {
+                        break;
+                    }
+                    outputStream.write(buffer, 0, bytesRead);
+                    remaining -= bytesRead;
+                }
+                outputStream.flush();
+                transferTuner.record(sessionId, length - remaining, sftpNanos, System.nanoTime() - start);
+            }
+        }
+    }
+    
     /**
      * Downloads a file from the target server via SFTP and writes it to an output stream
      * Uses the provided transferId for progress tracking
      */
     public void downloadFileWithProgress(String sessionId, String remotePath, OutputStream outputStream, String transferId) 
-            throws SftpException, IOException {
-        ChannelSftp sftpChannel = sessionManager.getChannel(sessionId);
+            throws SftpException, JSchException, IOException {
         String fileName = getFileName(remotePath);
         
         try {
             // Get file size for progress tracking using stat instead of ls
             long fileSize;
             try {
-                fileSize = sftpChannel.stat(remotePath).getSize();
+                fileSize = getFileSize(sessionId, remotePath);
             } catch (SftpException e) {
                 log.warn("Could not get file size for {}, proceeding without progress tracking", remotePath);
                 fileSize = -1; // Unknown size
@@ -98,20 +166,21 @@ public class SFTPService {
             if (progressTracker.getProgress(transferId) == null) {
                 progressTracker.startTransfer(transferId, fileName, "DOWNLOAD", fileSize);
             }
+            progressTracker.describeTransfer(transferId, sessionId, remotePath);
             
-            log.info("Downloading file: {} (size: {} bytes)", remotePath, fileSize);
-            
-            // Wrap output stream with progress tracking
-            ProgressTrackingOutputStream progressOutputStream = 
-                    new ProgressTrackingOutputStream(outputStream, progressTracker, transferId);
-            
-            try (InputStream inputStream = sftpChannel.get(remotePath)) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    progressOutputStream.write(buffer, 0, bytesRead);
+            CancellationToken cancellation = progressTracker.getCancellationToken(transferId);
+            try (TransferScheduler.Ticket ticket = transferScheduler.acquire(transferId, List.of(sessionId), fileSize)) {
+                log.info("Downloading file: {} (size: {} bytes)", remotePath, fileSize);
+                
+                // Wrap output stream with progress tracking and the scheduler's bandwidth caps
+                ProgressTrackingOutputStream progressOutputStream = 
+                        new ProgressTrackingOutputStream(outputStream, progressTracker, ticket.getTransferId(), transferScheduler);
+                
+                if (chunkedTransferService.shouldUseParallel(fileSize)) {
+                    chunkedTransferService.download(sessionId, remotePath, 0, fileSize, progressOutputStream, cancellation);
+                } else {
+                    copyFromRemote(sessionId, remotePath, progressOutputStream, cancellation);
                 }
-                progressOutputStream.flush();
             }
             
             progressTracker.completeTransfer(transferId);
@@ -127,7 +196,7 @@ public class SFTPService {
      * Legacy method that generates its own transferId
      */
     public String downloadFileWithProgress(String sessionId, String remotePath, OutputStream outputStream) 
-            throws SftpException, IOException {
+            throws SftpException, JSchException, IOException {
         String transferId = UUID.randomUUID().toString();
         downloadFileWithProgress(sessionId, remotePath, outputStream, transferId);
         return transferId;
@@ -138,8 +207,7 @@ public class SFTPService {
      * Uses the provided transferId for progress tracking
      */
     public void uploadFileWithProgress(String sessionId, String remotePath, InputStream inputStream, long fileSize, String transferId)
-            throws SftpException {
-        ChannelSftp sftpChannel = sessionManager.getChannel(sessionId);
+            throws SftpException, JSchException, IOException {
         String fileName = getFileName(remotePath);
         
         log.info("uploadFileWithProgress called with transferId: {} (is null: {})", transferId, transferId == null);
@@ -152,14 +220,22 @@ public class SFTPService {
             progressTracker.startTransfer(transferId, fileName, "UPLOAD", fileSize);
         }
         
+        progressTracker.describeTransfer(transferId, sessionId, remotePath);
         try {
             log.info("Uploading file to: {} (size: {} bytes) with transferId: {}", remotePath, fileSize, transferId);
 
-            // Wrap input stream with progress tracking
-            ProgressTrackingInputStream progressInputStream =
-                    new ProgressTrackingInputStream(inputStream, progressTracker, transferId);
+            CancellationToken cancellation = progressTracker.getCancellationToken(transferId);
+            try (TransferScheduler.Ticket ticket = transferScheduler.acquire(transferId, List.of(sessionId), fileSize)) {
+                // Wrap input stream with progress tracking and the scheduler's bandwidth caps
+                ProgressTrackingInputStream progressInputStream =
+                        new ProgressTrackingInputStream(inputStream, progressTracker, ticket.getTransferId(), transferScheduler);
 
-            sftpChannel.put(progressInputStream, remotePath);
+                if (chunkedTransferService.shouldUseParallel(fileSize)) {
+                    chunkedTransferService.upload(sessionId, progressInputStream, remotePath, cancellation);
+                } else {
+                    putWithCancellation(sessionId, progressInputStream, remotePath, cancellation, transferId);
+                }
+            }
 
             progressTracker.completeTransfer(transferId);
             log.info("Successfully uploaded file to: {} with transferId: {}", remotePath, transferId);
@@ -167,6 +243,8 @@ public class SFTPService {
         } catch (Exception e) {
             progressTracker.failTransfer(transferId, e.getMessage());
             throw e;
+        } finally {
+            listingCache.invalidate(sessionId, remotePath);
         }
     }
     
@@ -174,7 +252,7 @@ public class SFTPService {
      * Legacy method for backward compatibility
      */
     public void uploadFile(String sessionId, String remotePath, InputStream inputStream) 
-            throws SftpException {
+            throws SftpException, JSchException, IOException {
         // For legacy calls, generate a transferId and proceed normally
         String transferId = UUID.randomUUID().toString();
         uploadFileWithProgress(sessionId, remotePath, inputStream, -1, transferId);
@@ -183,12 +261,14 @@ public class SFTPService {
     /**
      * Creates a directory on the target server
      */
-    public void createDirectory(String sessionId, String remotePath) throws SftpException {
-        ChannelSftp sftpChannel = sessionManager.getChannel(sessionId);
-        
+    public void createDirectory(String sessionId, String remotePath) throws SftpException, JSchException {
         log.info("Creating directory: {}", remotePath);
         
-        sftpChannel.mkdir(remotePath);
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            lease.getChannel().mkdir(remotePath);
+        } finally {
+            listingCache.invalidate(sessionId, remotePath);
+        }
         
         log.info("Successfully created directory: {}", remotePath);
     }
@@ -196,15 +276,17 @@ public class SFTPService {
     /**
      * Deletes a file or directory on the target server
      */
-    public void deleteFile(String sessionId, String remotePath, boolean isDirectory) throws SftpException {
-        ChannelSftp sftpChannel = sessionManager.getChannel(sessionId);
-        
+    public void deleteFile(String sessionId, String remotePath, boolean isDirectory) throws SftpException, JSchException {
         log.info("Deleting {}: {}", isDirectory ? "directory" : "file", remotePath);
         
-        if (isDirectory) {
-            sftpChannel.rmdir(remotePath);
-        } else {
-            sftpChannel.rm(remotePath);
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            if (isDirectory) {
+                lease.getChannel().rmdir(remotePath);
+            } else {
+                lease.getChannel().rm(remotePath);
+            }
+        } finally {
+            listingCache.invalidateTree(sessionId, remotePath);
         }
         
         log.info("Successfully deleted {}: {}", isDirectory ? "directory" : "file", remotePath);
@@ -213,12 +295,15 @@ public class SFTPService {
     /**
      * Renames/moves a file or directory on the target server
      */
-    public void renameFile(String sessionId, String oldPath, String newPath) throws SftpException {
-        ChannelSftp sftpChannel = sessionManager.getChannel(sessionId);
-        
+    public void renameFile(String sessionId, String oldPath, String newPath) throws SftpException, JSchException {
         log.info("Renaming from {} to {}", oldPath, newPath);
         
-        sftpChannel.rename(oldPath, newPath);
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            lease.getChannel().rename(oldPath, newPath);
+        } finally {
+            listingCache.invalidateTree(sessionId, oldPath);
+            listingCache.invalidateTree(sessionId, newPath);
+        }
         
         log.info("Successfully renamed from {} to {}", oldPath, newPath);
     }
@@ -226,10 +311,11 @@ public class SFTPService {
     /**
      * Gets file information for a specific file
      */
-    public SFTPFileInfo getFileInfo(String sessionId, String remotePath) throws SftpException {
-        ChannelSftp sftpChannel = sessionManager.getChannel(sessionId);
-        
-        Vector<ChannelSftp.LsEntry> fileList = sftpChannel.ls(remotePath);
+    public SFTPFileInfo getFileInfo(String sessionId, String remotePath) throws SftpException, JSchException {
+        Vector<ChannelSftp.LsEntry> fileList;
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            fileList = lease.getChannel().ls(remotePath);
+        }
         ChannelSftp.LsEntry entry = fileList.stream()
                 .filter(e -> e.getFilename().equals(getFileName(remotePath)))
                 .findFirst()
@@ -238,6 +324,78 @@ public class SFTPService {
         return convertToFileInfo(entry, getParentPath(remotePath));
     }
     
+    /**
+     * Gets the raw attributes (size, mtime, permissions) of a remote file
+     */
+    public SftpATTRS statFile(String sessionId, String remotePath) throws SftpException, JSchException {
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            return lease.getChannel().stat(remotePath);
+        }
+    }
+    
+    /**
+     * Total size in bytes of a file or directory tree
+     * Runs {@code du -sb} on the host when exec is available, otherwise walks the tree over SFTP
+     */
+    public long getDiskUsage(String sessionId, String remotePath) throws SftpException, JSchException, IOException {
+        if (execService.isAvailable(sessionId)) {
+            ExecResult result = executeOrNull(sessionId, "du -sb -- " + SSHExecService.quote(remotePath));
+            if (result != null && result.isSuccess()) {
+                try {
+                    return Long.parseLong(result.getStdout().trim().split("\\s+")[0]);
+                } catch (NumberFormatException e) {
+                    log.debug("Unexpected du output for {}: {}", remotePath, result.getStdout());
+                }
+            }
+            log.debug("du failed for {}, falling back to SFTP walk", remotePath);
+        }
+        
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            ChannelSftp sftpChannel = lease.getChannel();
+            SftpATTRS attrs = sftpChannel.lstat(remotePath);
+            return attrs.isDir() && !attrs.isLink() ? sumTree(sftpChannel, remotePath) : attrs.getSize();
+        }
+    }
+    
+    /**
+     * Hex SHA-256 of a remote file
+     * Runs {@code sha256sum} on the host when exec is available, otherwise streams the file through a digest
+     */
+    public String getChecksum(String sessionId, String remotePath) throws SftpException, JSchException, IOException {
+        if (execService.isAvailable(sessionId)) {
+            ExecResult result = executeOrNull(sessionId, "sha256sum -- " + SSHExecService.quote(remotePath));
+            String digest = result != null && result.isSuccess() ? result.getStdout().trim().split("\\s+")[0] : "";
+            if (digest.matches("[0-9a-fA-F]{64}")) {
+                return digest.toLowerCase();
+            }
+            log.debug("sha256sum failed for {}, falling back to SFTP read", remotePath);
+        }
+        
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        try (DigestOutputStream digestStream = new DigestOutputStream(OutputStream.nullOutputStream(), sha256)) {
+            copyFromRemote(sessionId, remotePath, digestStream);
+        }
+        return HexFormat.of().formatHex(sha256.digest());
+    }
+    
+    /**
+     * Runs a remote command, or returns null when no exec channel could be used so the
+     * caller takes its SFTP path
+     */
+    private ExecResult executeOrNull(String sessionId, String command) {
+        try {
+            return execService.execute(sessionId, command);
+        } catch (JSchException | IOException e) {
+            log.debug("Remote command on {} could not run: {}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+    
     /**
      * Closes the SFTP channel/session
      */
@@ -246,7 +404,113 @@ public class SFTPService {
         log.info("Disconnected SFTP session: {}", sessionId);
     }
     
-    private SFTPFileInfo convertToFileInfo(ChannelSftp.LsEntry entry, String parentPath) {
+    private long sumTree(ChannelSftp sftpChannel, String directory) throws SftpException {
+        long total = 0;
+        Vector<ChannelSftp.LsEntry> entries = sftpChannel.ls(directory);
+        for (ChannelSftp.LsEntry entry : entries) {
+            String name = entry.getFilename();
+            if (".".equals(name) || "..".equals(name)) {
+                continue;
+            }
+            SftpATTRS attrs = entry.getAttrs();
+            if (attrs.isDir() && !attrs.isLink()) {
+                total += sumTree(sftpChannel, directory.endsWith("/") ? directory + name : directory + "/" + name);
+            } else {
+                total += attrs.getSize();
+            }
+        }
+        return total;
+    }
+    
+    private long getFileSize(String sessionId, String remotePath) throws SftpException, JSchException {
+        return statFile(sessionId, remotePath).getSize();
+    }
+    
+    private void copyFromRemote(String sessionId, String remotePath, OutputStream outputStream)
+            throws SftpException, JSchException, IOException {
+        copyFromRemote(sessionId, remotePath, outputStream, CancellationToken.NONE);
+    }
+
+    /**
+     * Streams a remote file to {@code outputStream}. Cancelling the token disconnects
+     * the channel, which fails a read blocked on the server and discards the channel.
+     */
+    private void copyFromRemote(String sessionId, String remotePath, OutputStream outputStream,
+                                CancellationToken cancellation) throws SftpException, JSchException, IOException {
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            CancellationToken.Registration abortOnCancel = cancellation.onCancel(lease::abort);
+            try {
+                SFTPTransferTuner.Settings settings = transferTuner.tune(sessionId, lease.getChannel());
+                long start = System.nanoTime();
+                try (TransferBufferPool.Buffer pooled = bufferPool.acquire(settings.bufferSize());
+                     InputStream inputStream = lease.getChannel().get(remotePath)) {
+                    byte[] buffer = pooled.bytes();
+                    long copied = 0;
+                    long sftpNanos = 0;
+                    while (true) {
+                        long readStart = System.nanoTime();
+                        int bytesRead = inputStream.read(buffer);
+                        sftpNanos += System.nanoTime() - readStart;
+                        if (bytesRead == -1) {
+                            break;
+                        }
+                        cancellation.throwIfCancelled();
+                        outputStream.write(buffer, 0, bytesRead);
+                        copied += bytesRead;
+                    }
+                    outputStream.flush();
+                    transferTuner.record(sessionId, copied, sftpNanos, System.nanoTime() - start);
+                } catch (IOException e) {
+                    lease.invalidate();
+                    cancellation.throwIfCancelled();
+                    throw e;
+                }
+            } finally {
+                abortOnCancel.close();
+            }
+        }
+    }
+
+    /**
+     * Single-channel upload. JSch leaves unacknowledged writes on a channel whose put
+     * was aborted, so the channel is discarded on failure; on cancellation the partial
+     * remote file is removed as well.
+     */
+    private void putWithCancellation(String sessionId, InputStream inputStream, String remotePath,
+                                     CancellationToken cancellation, String transferId)
+            throws SftpException, JSchException, IOException {
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            CancellationToken.Registration abortOnCancel = cancellation.onCancel(lease::abort);
+            try {
+                // put keeps up to the tuned number of writes unacknowledged
+                transferTuner.tune(sessionId, lease.getChannel());
+                // put() reads the source itself; time spent waiting on the client is not SFTP time
+                TimedInputStream source = new TimedInputStream(inputStream);
+                long start = System.nanoTime();
+                try {
+                    lease.getChannel().put(source, remotePath);
+                    long elapsed = System.nanoTime() - start;
+                    TransferState state = progressTracker.getState(transferId);
+                    if (state != null) {
+                        transferTuner.record(sessionId, state.getTransferredBytes(), elapsed - source.getReadNanos(), elapsed);
+                    }
+                } catch (SftpException e) {
+                    lease.invalidate();
+                    if (!cancellation.isCancelled()) {
+                        throw e;
+                    }
+                }
+            } finally {
+                abortOnCancel.close();
+            }
+        }
+        if (cancellation.isCancelled()) {
+            chunkedTransferService.removeQuietly(sessionId, remotePath);
+            throw new TransferCancelledException(transferId);
+        }
+    }
+    
+    SFTPFileInfo convertToFileInfo(ChannelSftp.LsEntry entry, String parentPath) {
         SFTPFileInfo fileInfo = new SFTPFileInfo();
         fileInfo.setName(entry.getFilename());
         fileInfo.setPath(parentPath.endsWith("/") ? parentPath + entry.getFilename() : parentPath + "/" + entry.getFilename());
@@ -309,4 +573,39 @@ public class SFTPService {
         int lastSlash = path.lastIndexOf('/');
         return lastSlash > 0 ? path.substring(0, lastSlash) : "/";
     }
-} 
\ No newline at end of file
+
+    /**
+     * Counts the time spent blocked reading the wrapped stream
+     */
+    private static class TimedInputStream extends FilterInputStream {
+        private long readNanos;
+
+        private TimedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                readNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read(b, off, len);
+            } finally {
+                readNanos += System.nanoTime() - start;
+            }
+        }
+
+        private long getReadNanos() {
+            return readNanos;
+        }
+    }
+}
\ No newline at end of file
@@ -1,100 +1,638 @@
 package com.zorth.ssh.service;
 
 import com.jcraft.jsch.*;
+import com.zorth.ssh.dto.SFTPPoolStats;
 import com.zorth.ssh.entity.SSHProfile;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class SFTPSessionManager {
-    
+
     private final SSHService sshService;
+    private final SFTPListingCache listingCache;
+    private final SSHProfileService profileService;
     private final ConcurrentMap<String, SFTPSessionInfo> activeSessions = new ConcurrentHashMap<>();
-    
+    // Profile behind each session id handed out, so an evicted session can be reopened on demand.
+    // Credentials are not kept; a reopen reads the current profile.
+    private final ConcurrentMap<String, SessionTarget> sessionTargets = new ConcurrentHashMap<>();
+
+    private record SessionTarget(Long profileId, String host, int port) {
+    }
+
+    private static final int MAX_RECONNECT_ATTEMPTS = 3;
+    // JSch's own default; a channel goes back to the pool with this depth whatever its last borrower set
+    static final int DEFAULT_BULK_REQUESTS = 16;
+
+    @Value("${sftp.pool.max-channels-per-session:4}")
+    private int maxChannelsPerSession;
+
+    @Value("${sftp.pool.borrow-timeout-ms:30000}")
+    private long borrowTimeoutMs;
+
+    @Value("${sftp.session.idle-ttl-ms:900000}")
+    private long idleTtlMs;
+
+    @Value("${sftp.session.max-total-sessions:200}")
+    private int maxTotalSessions;
+
+    @Value("${sftp.session.keepalive-interval-ms:30000}")
+    private int keepAliveIntervalMs;
+
+    @Value("${sftp.session.keepalive-count-max:3}")
+    private int keepAliveCountMax;
+
+    @Value("${ssh.exec.enabled:true}")
+    private boolean execEnabled;
+
+    @Value("${ssh.exec.max-channels-per-session:2}")
+    private int maxExecChannelsPerSession;
+
+    /**
+     * One JSch session with a bounded pool of SFTP channels multiplexed over it.
+     * ChannelSftp is not thread safe, so every caller borrows a channel exclusively.
+     */
     public static class SFTPSessionInfo {
         public final Session session;
-        public final ChannelSftp sftpChannel;
-        public final long lastUsed;
-        
-        public SFTPSessionInfo(Session session, ChannelSftp sftpChannel) {
+        private final int maxChannels;
+        private final Semaphore permits;
+        private final Deque<ChannelSftp> idleChannels = new ConcurrentLinkedDeque<>();
+        private final Set<ChannelSftp> borrowedChannels = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger waitingBorrowers = new AtomicInteger();
+        private final AtomicLong totalBorrows = new AtomicLong();
+        private final AtomicLong totalWaits = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final Semaphore execPermits;
+        private final AtomicInteger activeExecs = new AtomicInteger();
+        private volatile boolean execAllowed;
+        private volatile long lastUsed;
+        // Guarded by this: borrows and exec opens in progress, and whether eviction claimed the session
+        private int pendingUsers;
+        private boolean closing;
+
+        public SFTPSessionInfo(Session session, int maxChannels, int maxExecChannels, boolean execAllowed) {
             this.session = session;
-            this.sftpChannel = sftpChannel;
+            this.maxChannels = maxChannels;
+            this.permits = new Semaphore(maxChannels, true);
+            this.execPermits = new Semaphore(Math.max(1, maxExecChannels), true);
+            this.execAllowed = execAllowed;
             this.lastUsed = System.currentTimeMillis();
         }
+
+        public long getLastUsed() {
+            return lastUsed;
+        }
+
+        /**
+         * Registers a borrow or exec open; the session cannot be evicted until {@link #endUse}
+         */
+        private synchronized void beginUse() throws SessionClosingException {
+            if (closing) {
+                throw new SessionClosingException();
+            }
+            pendingUsers++;
+        }
+
+        private synchronized void endUse() {
+            pendingUsers--;
+        }
+
+        /**
+         * Claims the session for eviction if nothing is using or about to use it.
+         * Checked under the same lock as {@link #beginUse}, so a borrow either
+         * registers first and keeps the session or sees it closing and reconnects.
+         */
+        private synchronized boolean tryClose() {
+            if (pendingUsers > 0 || !borrowedChannels.isEmpty() || activeExecs.get() > 0) {
+                return false;
+            }
+            closing = true;
+            return true;
+        }
+
+        private ChannelSftp borrow(long timeoutMs) throws JSchException {
+            beginUse();
+            try {
+                return borrowRegistered(timeoutMs);
+            } finally {
+                endUse();
+            }
+        }
+
+        private ChannelSftp borrowRegistered(long timeoutMs) throws JSchException {
+            lastUsed = System.currentTimeMillis();
+            long waitStart = System.nanoTime();
+            boolean acquired = permits.tryAcquire();
+            if (!acquired) {
+                waitingBorrowers.incrementAndGet();
+                try {
+                    acquired = permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new JSchException("Interrupted while waiting for an SFTP channel", e);
+                } finally {
+                    waitingBorrowers.decrementAndGet();
+                    long waited = System.nanoTime() - waitStart;
+                    totalWaits.incrementAndGet();
+                    totalWaitNanos.addAndGet(waited);
+                    maxWaitNanos.accumulateAndGet(waited, Math::max);
+                }
+                if (!acquired) {
+                    throw new JSchException("Timed out after " + timeoutMs + " ms waiting for an SFTP channel");
+                }
+            }
+
+            try {
+                ChannelSftp channel;
+                while ((channel = idleChannels.pollFirst()) != null) {
+                    if (channel.isConnected() && !channel.isClosed()) {
+                        break;
+                    }
+                    channel.disconnect();
+                }
+                if (channel == null) {
+                    channel = (ChannelSftp) session.openChannel("sftp");
+                    channel.connect();
+                }
+                borrowedChannels.add(channel);
+                totalBorrows.incrementAndGet();
+                lastUsed = System.currentTimeMillis();
+                return channel;
+            } catch (JSchException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        private void release(ChannelSftp channel, boolean reusable) {
+            if (!borrowedChannels.remove(channel)) {
+                // Not ours (session was recreated meanwhile) - just drop it
+                channel.disconnect();
+                return;
+            }
+            lastUsed = System.currentTimeMillis();
+            if (reusable && channel.isConnected() && !channel.isClosed() && session.isConnected()
+                    && resetBulkRequests(channel)) {
+                idleChannels.offerFirst(channel);
+            } else {
+                channel.disconnect();
+            }
+            permits.release();
+        }
+
+        private boolean resetBulkRequests(ChannelSftp channel) {
+            try {
+                channel.setBulkRequests(DEFAULT_BULK_REQUESTS);
+                return true;
+            } catch (JSchException e) {
+                log.debug("Could not reset bulk requests, dropping channel: {}", e.getMessage());
+                return false;
+            }
+        }
+
+        private void disconnectChannels() {
+            ChannelSftp channel;
+            while ((channel = idleChannels.pollFirst()) != null) {
+                channel.disconnect();
+            }
+            borrowedChannels.forEach(Channel::disconnect);
+        }
+
+        private SFTPPoolStats toStats(String sessionId) {
+            long waits = totalWaits.get();
+            return new SFTPPoolStats(
+                sessionId,
+                maxChannels,
+                idleChannels.size(),
+                borrowedChannels.size(),
+                waitingBorrowers.get(),
+                totalBorrows.get(),
+                waits,
+                waits > 0 ? TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / waits) : 0,
+                TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get())
+            );
+        }
+    }
+
+    /**
+     * Thrown by a borrow that raced with eviction; the caller reopens the session
+     */
+    private static class SessionClosingException extends JSchException {
+        private static final long serialVersionUID = 1L;
+
+        private SessionClosingException() {
+            super("SFTP session is being closed");
+        }
+    }
+
+    /**
+     * An exec channel opened on a pooled session. Exec channels are not reused - each
+     * runs a single command - but they count against a per-session limit so they cannot
+     * exhaust the server's MaxSessions alongside the SFTP channels.
+     */
+    public static class ExecLease implements AutoCloseable {
+        private final SFTPSessionInfo owner;
+        private final ChannelExec channel;
+        private boolean closed;
+
+        private ExecLease(SFTPSessionInfo owner, ChannelExec channel) {
+            this.owner = owner;
+            this.channel = channel;
+        }
+
+        public ChannelExec getChannel() {
+            return channel;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                channel.disconnect();
+                owner.activeExecs.decrementAndGet();
+                owner.lastUsed = System.currentTimeMillis();
+                owner.execPermits.release();
+            }
+        }
+    }
+
+    /**
+     * A borrowed SFTP channel. Closing the lease returns the channel to its pool,
+     * or tears it down if the caller marked it as unusable.
+     */
+    public static class ChannelLease implements AutoCloseable {
+        private final SFTPSessionInfo owner;
+        private final ChannelSftp channel;
+        private volatile boolean reusable = true;
+        private boolean closed;
+
+        private ChannelLease(SFTPSessionInfo owner, ChannelSftp channel) {
+            this.owner = owner;
+            this.channel = channel;
+        }
+
+        public ChannelSftp getChannel() {
+            return channel;
+        }
+
+        /**
+         * Marks the channel as broken so it is disconnected instead of pooled
+         */
+        public void invalidate() {
+            reusable = false;
+        }
+
+        /**
+         * Invalidates the channel and disconnects it now, so a thread blocked on it
+         * gets an I/O error. Safe to call from any thread; does nothing once the lease is closed.
+         */
+        public synchronized void abort() {
+            if (!closed) {
+                reusable = false;
+                channel.disconnect();
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                owner.release(channel, reusable);
+            }
+        }
     }
-    
+
     public String createSession(SSHProfile profile) throws JSchException {
         String sessionId = generateSessionId(profile);
-        
+        sessionTargets.put(sessionId, new SessionTarget(profile.getId(), profile.getHost(), profile.getPort()));
+
         // Check if session already exists and is valid
         SFTPSessionInfo existingSession = activeSessions.get(sessionId);
         if (existingSession != null && isSessionValid(existingSession)) {
             log.debug("Reusing existing SFTP session for profile: {}", profile.getId());
             return sessionId;
         }
-        
+
         // Clean up invalid session if exists
         if (existingSession != null) {
             cleanupSession(sessionId);
         }
-        
-        // Create new session
+
+        // Create new session, with SSH-level keepalives so idle pooled sessions stay warm
         Session session = sshService.createSession(profile);
+        if (keepAliveIntervalMs > 0) {
+            session.setServerAliveInterval(keepAliveIntervalMs);
+            session.setServerAliveCountMax(keepAliveCountMax);
+        }
         sshService.connectSession(session);
-        
-        ChannelSftp sftpChannel = (ChannelSftp) session.openChannel("sftp");
-        sftpChannel.connect();
-        
-        activeSessions.put(sessionId, new SFTPSessionInfo(session, sftpChannel));
-        log.info("Created new SFTP session for profile: {}", profile.getId());
-        
+
+        // Open the first channel eagerly so a missing SFTP subsystem fails the connect call
+        SFTPSessionInfo sessionInfo = new SFTPSessionInfo(session, maxChannelsPerSession,
+                maxExecChannelsPerSession, execEnabled && !Boolean.FALSE.equals(profile.getExecEnabled()));
+        try {
+            ChannelSftp sftpChannel = (ChannelSftp) session.openChannel("sftp");
+            sftpChannel.connect();
+            sessionInfo.idleChannels.offer(sftpChannel);
+        } catch (JSchException e) {
+            session.disconnect();
+            throw e;
+        }
+
+        SFTPSessionInfo previous = activeSessions.putIfAbsent(sessionId, sessionInfo);
+        if (previous != null && isSessionValid(previous)) {
+            // Another request raced us to create the same session
+            sessionInfo.disconnectChannels();
+            session.disconnect();
+            return sessionId;
+        }
+        if (previous != null) {
+            activeSessions.put(sessionId, sessionInfo);
+            previous.disconnectChannels();
+            previous.session.disconnect();
+        }
+        log.info("Created new SFTP session for profile: {} (max {} channels)", profile.getId(), maxChannelsPerSession);
+
+        if (activeSessions.size() > maxTotalSessions) {
+            evictLeastRecentlyUsed(sessionId);
+        }
+
         return sessionId;
     }
-    
-    public ChannelSftp getChannel(String sessionId) {
+
+    /**
+     * Borrows an SFTP channel for exclusive use, waiting up to the configured
+     * timeout when all channels of the session are in use
+     */
+    public ChannelLease borrowChannel(String sessionId) throws JSchException {
+        for (int attempt = 1; ; attempt++) {
+            SFTPSessionInfo sessionInfo = getOrReconnect(sessionId);
+            try {
+                return new ChannelLease(sessionInfo, sessionInfo.borrow(borrowTimeoutMs));
+            } catch (SessionClosingException e) {
+                if (attempt >= MAX_RECONNECT_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * The live session for {@code sessionId}, reopened from its profile if it was
+     * evicted or dropped between the caller's connect and its use of the session.
+     * The profile is read again, so a reopen uses current credentials and fails if
+     * the profile was deleted or now points at a different login.
+     */
+    private SFTPSessionInfo getOrReconnect(String sessionId) throws JSchException {
         SFTPSessionInfo sessionInfo = activeSessions.get(sessionId);
-        if (sessionInfo == null || !isSessionValid(sessionInfo)) {
+        if (sessionInfo != null && isSessionValid(sessionInfo)) {
+            return sessionInfo;
+        }
+        SessionTarget target = sessionTargets.get(sessionId);
+        if (target == null) {
             throw new RuntimeException("SFTP session not found or invalid: " + sessionId);
         }
-        return sessionInfo.sftpChannel;
+        SSHProfile profile;
+        try {
+            profile = profileService.findById(target.profileId());
+        } catch (RuntimeException e) {
+            sessionTargets.remove(sessionId, target);
+            throw new JSchException("Profile " + target.profileId() + " of SFTP session " + sessionId + " no longer exists");
+        }
+        if (!sessionId.equals(generateSessionId(profile))) {
+            sessionTargets.remove(sessionId, target);
+            throw new JSchException("Profile " + target.profileId() + " changed since SFTP session " + sessionId + " was opened");
+        }
+        log.info("Reopening SFTP session: {}", sessionId);
+        createSession(profile);
+        sessionInfo = activeSessions.get(sessionId);
+        if (sessionInfo == null) {
+            throw new JSchException("SFTP session was closed again while reopening: " + sessionId);
+        }
+        return sessionInfo;
+    }
+
+    /**
+     * Opens an (unconnected) exec channel on the session, waiting up to the borrow
+     * timeout when the session's exec channels are all in use
+     */
+    public ExecLease openExecChannel(String sessionId) throws JSchException {
+        for (int attempt = 1; ; attempt++) {
+            SFTPSessionInfo sessionInfo = getOrReconnect(sessionId);
+            if (!sessionInfo.execAllowed) {
+                throw new JSchException("Remote exec is disabled for session: " + sessionId);
+            }
+            try {
+                sessionInfo.beginUse();
+            } catch (SessionClosingException e) {
+                if (attempt >= MAX_RECONNECT_ATTEMPTS) {
+                    throw e;
+                }
+                continue;
+            }
+            try {
+                return openExecChannel(sessionInfo);
+            } finally {
+                sessionInfo.endUse();
+            }
+        }
     }
-    
+
+    private ExecLease openExecChannel(SFTPSessionInfo sessionInfo) throws JSchException {
+        try {
+            if (!sessionInfo.execPermits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new JSchException("Timed out after " + borrowTimeoutMs + " ms waiting for an exec channel");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JSchException("Interrupted while waiting for an exec channel", e);
+        }
+        try {
+            ChannelExec channel = (ChannelExec) sessionInfo.session.openChannel("exec");
+            sessionInfo.activeExecs.incrementAndGet();
+            sessionInfo.lastUsed = System.currentTimeMillis();
+            return new ExecLease(sessionInfo, channel);
+        } catch (JSchException | RuntimeException e) {
+            sessionInfo.execPermits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Whether remote commands may be run on the session: enabled globally and for the
+     * profile, and not found to be unsupported by the server
+     */
+    public boolean isExecAllowed(String sessionId) {
+        SFTPSessionInfo sessionInfo = activeSessions.get(sessionId);
+        return sessionInfo != null && sessionInfo.execAllowed;
+    }
+
+    /**
+     * Stops offering exec on the session, e.g. after the server rejected an exec channel
+     * or lacks the command tools; callers then use their SFTP-only paths
+     */
+    public void disableExec(String sessionId) {
+        SFTPSessionInfo sessionInfo = activeSessions.get(sessionId);
+        if (sessionInfo != null && sessionInfo.execAllowed) {
+            sessionInfo.execAllowed = false;
+            log.info("Remote exec disabled for SFTP session: {}", sessionId);
+        }
+    }
+
+    /**
+     * host:port of the server behind a session, used to group transfers per remote host
+     */
+    public String getHostKey(String sessionId) {
+        SessionTarget target = sessionTargets.get(sessionId);
+        if (target == null) {
+            return "unknown";
+        }
+        return hostKey(target.host(), target.port());
+    }
+
+    /**
+     * Profile a session id was handed out for, or null if it never was
+     */
+    public Long getProfileId(String sessionId) {
+        SessionTarget target = sessionTargets.get(sessionId);
+        return target != null ? target.profileId() : null;
+    }
+
+    /**
+     * Key under which per-host limits and statistics are kept
+     */
+    public static String hostKey(String host, int port) {
+        return host + ":" + port;
+    }
+
+    /**
+     * Maximum number of channels a single session may have open at once
+     */
+    public int getMaxChannelsPerSession() {
+        return maxChannelsPerSession;
+    }
+
+    public List<SFTPPoolStats> getPoolStats() {
+        return activeSessions.entrySet().stream()
+                .map(entry -> entry.getValue().toStats(entry.getKey()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Closes sessions that have been idle longer than the configured TTL, then
+     * trims the least recently used idle sessions down to the total session cap.
+     * Sessions with borrowed channels or borrows in progress are never evicted, and a
+     * borrow that loses the race against eviction reopens the session.
+     */
+    public void evictIdleSessions() {
+        long cutoff = System.currentTimeMillis() - idleTtlMs;
+        int evicted = 0;
+        for (var entry : activeSessions.entrySet()) {
+            SFTPSessionInfo sessionInfo = entry.getValue();
+            if (!isSessionValid(sessionInfo)) {
+                cleanupSession(entry.getKey(), sessionInfo);
+                evicted++;
+            } else if (sessionInfo.getLastUsed() < cutoff && sessionInfo.tryClose()) {
+                cleanupSession(entry.getKey(), sessionInfo);
+                evicted++;
+            }
+        }
+        if (activeSessions.size() > maxTotalSessions) {
+            evicted += evictLeastRecentlyUsed(null);
+        }
+        if (evicted > 0) {
+            log.info("Evicted {} idle SFTP sessions, {} remain active", evicted, activeSessions.size());
+        }
+    }
+
+    public int getActiveSessionCount() {
+        return activeSessions.size();
+    }
+
+    private record EvictionCandidate(String sessionId, SFTPSessionInfo sessionInfo, long lastUsed) {
+    }
+
+    private int evictLeastRecentlyUsed(String keepSessionId) {
+        // lastUsed keeps changing, so order by the value seen when the candidate was taken
+        PriorityQueue<EvictionCandidate> oldestFirst =
+                new PriorityQueue<>(Comparator.comparingLong(EvictionCandidate::lastUsed));
+        activeSessions.forEach((id, info) -> {
+            if (!id.equals(keepSessionId)) {
+                oldestFirst.add(new EvictionCandidate(id, info, info.getLastUsed()));
+            }
+        });
+
+        int evicted = 0;
+        EvictionCandidate candidate;
+        while (activeSessions.size() > maxTotalSessions && (candidate = oldestFirst.poll()) != null) {
+            if (candidate.sessionInfo().tryClose()) {
+                log.debug("Evicting least recently used SFTP session: {}", candidate.sessionId());
+                cleanupSession(candidate.sessionId(), candidate.sessionInfo());
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
     public void closeSession(String sessionId) {
         cleanupSession(sessionId);
     }
-    
+
     public void closeAllSessions() {
         log.info("Closing all SFTP sessions");
         activeSessions.keySet().forEach(this::cleanupSession);
     }
-    
+
     private String generateSessionId(SSHProfile profile) {
-        return String.format("sftp_%d_%s_%s_%d", 
-            profile.getId(), 
-            profile.getUsername(), 
-            profile.getHost(), 
+        return String.format("sftp_%d_%s_%s_%d",
+            profile.getId(),
+            profile.getUsername(),
+            profile.getHost(),
             profile.getPort());
     }
-    
+
     private boolean isSessionValid(SFTPSessionInfo sessionInfo) {
-        return sessionInfo.session.isConnected() && 
-               sessionInfo.sftpChannel.isConnected() && 
-               !sessionInfo.sftpChannel.isClosed();
+        return sessionInfo.session.isConnected();
     }
-    
+
     private void cleanupSession(String sessionId) {
         SFTPSessionInfo sessionInfo = activeSessions.remove(sessionId);
+        listingCache.evictSession(sessionId);
+        disconnect(sessionId, sessionInfo);
+    }
+
+    /**
+     * Removes the session only if it is still the one evicted; a concurrent reopen keeps its new session
+     */
+    private void cleanupSession(String sessionId, SFTPSessionInfo sessionInfo) {
+        if (activeSessions.remove(sessionId, sessionInfo)) {
+            listingCache.evictSession(sessionId);
+        }
+        disconnect(sessionId, sessionInfo);
+    }
+
+    private void disconnect(String sessionId, SFTPSessionInfo sessionInfo) {
         if (sessionInfo != null) {
             try {
-                if (sessionInfo.sftpChannel.isConnected()) {
-                    sessionInfo.sftpChannel.disconnect();
-                }
+                sessionInfo.disconnectChannels();
                 if (sessionInfo.session.isConnected()) {
                     sessionInfo.session.disconnect();
                 }
@@ -104,4 +642,4 @@ public class SFTPSessionManager {
             }
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,219 @@
+package com.zorth.ssh.service;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+import com.zorth.ssh.dto.SFTPTransferTuning;
+import com.zorth.ssh.dto.TransferProgress;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses the copy buffer size and the JSch request pipelining depth per profile.
+ * The round trip is probed with a cheap realpath request at most once per probe
+ * interval, and each large enough transfer reports its throughput afterwards.
+ * The pipeline doubles while transfers run close to what the current depth allows
+ * per round trip and halves while they stay far below it. Buffers hold about one
+ * round trip's worth of data at the observed rate.
+ */
+@Slf4j
+@Service
+public class SFTPTransferTuner {
+
+    // JSch sends reads of roughly its 32 KiB packet size, so in-flight bytes are about depth * this
+    private static final int REQUEST_BYTES = 32 * 1024;
+    private static final double SMOOTHING_FACTOR = 0.3;
+    private static final double GROW_THRESHOLD = 0.8;
+    private static final double SHRINK_THRESHOLD = 0.25;
+    private static final double MIN_BUFFER_SECONDS = 0.01;
+
+    /**
+     * Settings for one copy
+     */
+    public record Settings(int bufferSize, int bulkRequests) {
+    }
+
+    private final SFTPSessionManager sessionManager;
+    private final TransferBufferPool bufferPool;
+    private final int initialBulkRequests;
+    private final int minBulkRequests;
+    private final int maxBulkRequests;
+    private final int initialBufferSize;
+    private final long minSampleBytes;
+    private final long probeIntervalNanos;
+    private final ConcurrentMap<String, ProfileTuning> tunings = new ConcurrentHashMap<>();
+
+    public SFTPTransferTuner(SFTPSessionManager sessionManager,
+                             TransferBufferPool bufferPool,
+                             @Value("${sftp.transfer.tuning.initial-bulk-requests:16}") int initialBulkRequests,
+                             @Value("${sftp.transfer.tuning.min-bulk-requests:8}") int minBulkRequests,
+                             @Value("${sftp.transfer.tuning.max-bulk-requests:128}") int maxBulkRequests,
+                             @Value("${sftp.transfer.tuning.initial-buffer-bytes:65536}") int initialBufferSize,
+                             @Value("${sftp.transfer.tuning.min-sample-bytes:1048576}") long minSampleBytes,
+                             @Value("${sftp.transfer.tuning.rtt-probe-interval-ms:60000}") long probeIntervalMs) {
+        this.sessionManager = sessionManager;
+        this.bufferPool = bufferPool;
+        this.minBulkRequests = Math.max(1, minBulkRequests);
+        this.maxBulkRequests = Math.max(this.minBulkRequests, maxBulkRequests);
+        this.initialBulkRequests = clamp(initialBulkRequests, this.minBulkRequests, this.maxBulkRequests);
+        this.initialBufferSize = clamp(initialBufferSize, bufferPool.getMinBufferSize(), bufferPool.getMaxBufferSize());
+        this.minSampleBytes = minSampleBytes;
+        this.probeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(probeIntervalMs);
+    }
+
+    private class ProfileTuning {
+        private final Long profileId;
+        private final String host;
+        private long rttNanos;
+        private long lastProbeNanos;
+        private boolean probed;
+        private double throughput;
+        private long samples;
+        private int bufferSize = initialBufferSize;
+        private int bulkRequests = initialBulkRequests;
+
+        private ProfileTuning(Long profileId, String host) {
+            this.profileId = profileId;
+            this.host = host;
+        }
+
+        /**
+         * True for the one caller that should probe now
+         */
+        private synchronized boolean claimProbe(long now) {
+            if (probed && now - lastProbeNanos < probeIntervalNanos) {
+                return false;
+            }
+            probed = true;
+            lastProbeNanos = now;
+            return true;
+        }
+
+        private synchronized void recordRtt(long nanos) {
+            rttNanos = rttNanos == 0 ? nanos : (long) (SMOOTHING_FACTOR * nanos + (1 - SMOOTHING_FACTOR) * rttNanos);
+        }
+
+        private synchronized void recordThroughput(double bytesPerSecond) {
+            throughput = throughput == 0
+                    ? bytesPerSecond
+                    : SMOOTHING_FACTOR * bytesPerSecond + (1 - SMOOTHING_FACTOR) * throughput;
+            samples++;
+            if (rttNanos > 0) {
+                // What the current depth can move per round trip; running near it means the pipeline is the limit
+                double windowLimit = (double) bulkRequests * REQUEST_BYTES * 1e9 / rttNanos;
+                if (bytesPerSecond >= windowLimit * GROW_THRESHOLD) {
+                    bulkRequests = Math.min(maxBulkRequests, bulkRequests * 2);
+                } else if (bytesPerSecond < windowLimit * SHRINK_THRESHOLD) {
+                    bulkRequests = Math.max(minBulkRequests, bulkRequests / 2);
+                }
+            }
+            double seconds = Math.max(rttNanos / 1e9, MIN_BUFFER_SECONDS);
+            int target = (int) Math.min(Integer.MAX_VALUE, throughput * seconds);
+            bufferSize = clamp(TransferBufferPool.roundUp(target), bufferPool.getMinBufferSize(), bufferPool.getMaxBufferSize());
+        }
+
+        private synchronized Settings settings() {
+            return new Settings(bufferSize, bulkRequests);
+        }
+
+        private synchronized SFTPTransferTuning toDto() {
+            long speed = (long) throughput;
+            return new SFTPTransferTuning(profileId, host, rttNanos / 1e6, speed, TransferProgress.formatSpeed(speed),
+                    bufferSize, bulkRequests, samples);
+        }
+    }
+
+    /**
+     * Settings for a copy over {@code channel}, whose pipelining depth is set to match.
+     * Probes the round trip first when it has not been measured recently.
+     */
+    public Settings tune(String sessionId, ChannelSftp channel) {
+        return tune(sessionId, channel, Long.MAX_VALUE);
+    }
+
+    /**
+     * As {@link #tune(String, ChannelSftp)} for a read of {@code rangeLength} bytes, with
+     * the depth capped as in {@link #bulkRequestsFor}
+     */
+    public Settings tune(String sessionId, ChannelSftp channel, long rangeLength) {
+        ProfileTuning tuning = tunings.computeIfAbsent(sessionId, id ->
+                new ProfileTuning(sessionManager.getProfileId(id), sessionManager.getHostKey(id)));
+        long now = System.nanoTime();
+        if (tuning.claimProbe(now)) {
+            try {
+                channel.realpath(".");
+                tuning.recordRtt(System.nanoTime() - now);
+            } catch (SftpException e) {
+                log.debug("RTT probe for session {} failed: {}", sessionId, e.getMessage());
+            }
+        }
+        Settings settings = tuning.settings();
+        long needed = requestsFor(rangeLength);
+        if (needed < settings.bulkRequests()) {
+            settings = new Settings(settings.bufferSize(), (int) Math.max(1, needed));
+        }
+        try {
+            channel.setBulkRequests(settings.bulkRequests());
+        } catch (JSchException e) {
+            log.debug("Could not set bulk requests for session {}: {}", sessionId, e.getMessage());
+        }
+        return settings;
+    }
+
+    /**
+     * Pipelining depth for reading {@code length} bytes from the middle of a file. JSch's
+     * read stream keeps this many requests in flight without regard for where the range
+     * ends, so the depth is capped at what the range needs and nothing is read past it.
+     */
+    public int bulkRequestsFor(String sessionId, long length) {
+        ProfileTuning tuning = tunings.get(sessionId);
+        int depth = tuning != null ? tuning.settings().bulkRequests() : initialBulkRequests;
+        long needed = requestsFor(length);
+        return (int) Math.max(1, Math.min(depth, needed));
+    }
+
+    /**
+     * Reports a finished copy. {@code sftpNanos} is the part of {@code elapsedNanos} spent
+     * blocked on the SFTP stream; the rest went to the other side of the copy - the
+     * client, or a bandwidth cap. A copy that spent longer there than on SFTP says
+     * nothing about the server and is ignored, as are transfers below the sample
+     * threshold, which are dominated by latency.
+     */
+    public void record(String sessionId, long bytes, long sftpNanos, long elapsedNanos) {
+        ProfileTuning tuning = tunings.get(sessionId);
+        if (tuning == null || bytes < minSampleBytes || sftpNanos <= 0) {
+            return;
+        }
+        if (elapsedNanos - sftpNanos > sftpNanos) {
+            log.debug("Skipping throughput sample for session {}: limited by its sink or a bandwidth cap", sessionId);
+            return;
+        }
+        tuning.recordThroughput(bytes * 1e9 / sftpNanos);
+    }
+
+    /**
+     * Settings each profile has settled on so far
+     */
+    public List<SFTPTransferTuning> getTunings() {
+        List<SFTPTransferTuning> list = new ArrayList<>(tunings.size());
+        for (ProfileTuning tuning : tunings.values()) {
+            list.add(tuning.toDto());
+        }
+        return list;
+    }
+
+    private static long requestsFor(long length) {
+        return length / REQUEST_BYTES + (length % REQUEST_BYTES == 0 ? 0 : 1);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,483 @@
+package com.zorth.ssh.service;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import com.zorth.ssh.dto.ExecResult;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Queue;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Recursive delete and copy of remote trees as background jobs.
+ * A job walks the tree in parallel: every directory listing and every batch of
+ * file operations is a task on a worker pool shared by all jobs, each job runs at
+ * most a few tasks at once, and each task borrows a pooled channel only for as long
+ * as it needs one. Progress is reported
+ * through TransferProgressTracker under the job id, and the job stops scheduling
+ * work once it is cancelled there. When the host allows exec, a directory delete
+ * is first attempted as a single {@code rm -rf}. Jobs wait for a slot in the
+ * TransferScheduler before they start and hold it until they finish.
+ */
+@Slf4j
+@Service
+public class SFTPTreeOperationService {
+
+    private static final int FILE_BATCH_SIZE = 64;
+
+    private final SFTPSessionManager sessionManager;
+    private final SFTPChunkedTransferService chunkedTransferService;
+    private final TransferProgressTracker progressTracker;
+    private final SFTPListingCache listingCache;
+    private final SSHExecService execService;
+    private final TransferScheduler transferScheduler;
+    private final ExecutorService workers;
+
+    @Value("${sftp.tree.concurrency:4}")
+    private int concurrency;
+
+    @Value("${sftp.tree.exec-timeout-ms:1800000}")
+    private long execTimeoutMs;
+
+    public SFTPTreeOperationService(SFTPSessionManager sessionManager,
+                                    SFTPChunkedTransferService chunkedTransferService,
+                                    TransferProgressTracker progressTracker,
+                                    SFTPListingCache listingCache,
+                                    SSHExecService execService,
+                                    TransferScheduler transferScheduler,
+                                    @Value("${sftp.tree.worker-threads:16}") int workerThreads) {
+        this.sessionManager = sessionManager;
+        this.chunkedTransferService = chunkedTransferService;
+        this.progressTracker = progressTracker;
+        this.listingCache = listingCache;
+        this.execService = execService;
+        this.transferScheduler = transferScheduler;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerThreads), runnable -> {
+            Thread thread = new Thread(runnable, "sftp-tree-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * One running tree job. Tracks outstanding tasks so the last one to finish can
+     * complete the job, and remembers the first failure. Tasks wait in the job's own
+     * queue until one of its permits is free, so a large tree cannot take over the
+     * shared workers.
+     */
+    private class TreeJob {
+        private final String jobId;
+        private final String sessionId;
+        private final String invalidatePath;
+        private final Semaphore permits;
+        private final Queue<TreeTask> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong discovered = new AtomicLong();
+        private final AtomicLong done = new AtomicLong();
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private CancellationToken cancellation = CancellationToken.NONE;
+
+        private TreeJob(String jobId, String sessionId, String invalidatePath) {
+            this.jobId = jobId;
+            this.sessionId = sessionId;
+            this.invalidatePath = invalidatePath;
+            this.permits = new Semaphore(Math.max(1, Math.min(concurrency, sessionManager.getMaxChannelsPerSession())));
+        }
+
+        private void submit(TreeTask task) {
+            outstanding.incrementAndGet();
+            pending.add(task);
+            dispatch();
+        }
+
+        /**
+         * Hands queued tasks to the shared workers while the job has permits left. A task
+         * releases its permit before dispatching again, so no queued task is stranded.
+         */
+        private void dispatch() {
+            while (!pending.isEmpty() && permits.tryAcquire()) {
+                TreeTask task = pending.poll();
+                if (task == null) {
+                    permits.release();
+                    continue;
+                }
+                try {
+                    workers.execute(() -> run(task));
+                } catch (RejectedExecutionException e) {
+                    // Shutting down: count the task as done so the job still finishes
+                    permits.release();
+                    fail(e);
+                    taskDone();
+                }
+            }
+        }
+
+        private void run(TreeTask task) {
+            try {
+                if (!isStopped()) {
+                    task.run();
+                }
+            } catch (Exception e) {
+                fail(e);
+            } finally {
+                permits.release();
+                dispatch();
+                taskDone();
+            }
+        }
+
+        private void taskDone() {
+            if (outstanding.decrementAndGet() == 0) {
+                finish();
+            }
+        }
+
+        private void fail(Exception e) {
+            if (failure.compareAndSet(null, e)) {
+                log.error("Tree job {} failed: {}", jobId, e.getMessage());
+            }
+        }
+
+        private boolean isStopped() {
+            return failure.get() != null || cancellation.isCancelled();
+        }
+
+        private void discover(long units) {
+            progressTracker.updateTotal(jobId, discovered.addAndGet(units));
+        }
+
+        private void advance(long units) {
+            progressTracker.updateProgress(jobId, done.addAndGet(units));
+        }
+
+        /**
+         * Queues {@code root} with the scheduler; once admitted the job's slot is held
+         * until its last task completes
+         */
+        private void start(long sizeBytes, TreeTask root) {
+            cancellation = progressTracker.getCancellationToken(jobId);
+            transferScheduler.submit(jobId, List.of(sessionId), sizeBytes, () -> {
+                submit(root);
+                finished.await();
+            });
+        }
+
+        /**
+         * Counts copied bytes and holds the job to the scheduler's bandwidth caps. An
+         * interrupted throttle fails the job, which stops the copy loop through
+         * {@link #isStopped}; the interrupt is not re-raised on the shared worker.
+         */
+        private void transferred(long bytes) {
+            advance(bytes);
+            try {
+                transferScheduler.throttle(jobId, bytes);
+            } catch (InterruptedIOException e) {
+                if (!cancellation.isCancelled()) {
+                    fail(e);
+                }
+            }
+        }
+
+        private void finish() {
+            finished.countDown();
+            listingCache.invalidateTree(sessionId, invalidatePath);
+            Exception error = failure.get();
+            if (error != null) {
+                progressTracker.failTransfer(jobId, error.getMessage());
+            } else if (cancellation.isCancelled()) {
+                log.info("Tree job {} stopped after cancellation ({} of {} done)", jobId, done.get(), discovered.get());
+            } else {
+                progressTracker.completeTransfer(jobId);
+                log.info("Tree job {} finished ({} units)", jobId, done.get());
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface TreeTask {
+        void run() throws Exception;
+    }
+
+    /**
+     * Directory waiting for its children to be removed. Starts with one pending unit
+     * for its own listing; the directory is removed when the count drops to zero.
+     */
+    private static class PendingDirectory {
+        private final String path;
+        private final PendingDirectory parent;
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        private PendingDirectory(String path, PendingDirectory parent) {
+            this.path = path;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * Starts deleting {@code remotePath} and everything below it. Progress counts removed entries.
+     * The path is normalized first; the root, the home directory and relative paths
+     * above it are refused however they are spelled.
+     */
+    public void startDelete(String sessionId, String requestedPath, String jobId) throws SftpException, JSchException {
+        String remotePath = requestedPath == null ? "" : normalizePath(requestedPath);
+        if (remotePath.isEmpty() || "/".equals(remotePath) || remotePath.equals("..") || remotePath.startsWith("../")) {
+            throw new IllegalArgumentException("Refusing to delete " + requestedPath);
+        }
+        SftpATTRS attrs = lstat(sessionId, remotePath);
+
+        progressTracker.startTransfer(jobId, getFileName(remotePath), "DELETE", 1);
+        TreeJob job = new TreeJob(jobId, sessionId, remotePath);
+        job.discovered.set(1);
+        log.info("Starting recursive delete {} of {}", jobId, remotePath);
+
+        if (attrs.isDir() && !attrs.isLink()) {
+            PendingDirectory root = new PendingDirectory(remotePath, null);
+            if (execService.isAvailable(sessionId)) {
+                job.start(-1, () -> {
+                    if (!deleteWithExec(job, remotePath)) {
+                        job.submit(() -> deleteDirectory(job, root));
+                    }
+                });
+            } else {
+                job.start(-1, () -> deleteDirectory(job, root));
+            }
+        } else {
+            job.start(0, () -> deleteFiles(job, List.of(remotePath)));
+        }
+    }
+
+    /**
+     * Starts copying {@code sourcePath} to {@code targetPath}, which must not exist yet.
+     * Progress counts copied bytes. Symbolic links are skipped.
+     */
+    public void startCopy(String sessionId, String sourcePath, String targetPath, String jobId)
+            throws SftpException, JSchException {
+        String source = trimTrailingSlash(sourcePath);
+        String target = trimTrailingSlash(targetPath);
+        if (target.equals(source) || target.startsWith(source + "/")) {
+            throw new IllegalArgumentException("Cannot copy " + source + " into itself");
+        }
+        SftpATTRS attrs = lstat(sessionId, source);
+        if (exists(sessionId, target)) {
+            throw new IllegalArgumentException("Target already exists: " + target);
+        }
+
+        progressTracker.startTransfer(jobId, getFileName(source), "COPY", 0);
+        progressTracker.describeTransfer(jobId, sessionId, target);
+        TreeJob job = new TreeJob(jobId, sessionId, target);
+        log.info("Starting recursive copy {} from {} to {}", jobId, source, target);
+
+        if (attrs.isDir()) {
+            job.start(-1, () -> copyDirectory(job, source, target, attrs));
+        } else {
+            job.discover(attrs.getSize());
+            job.start(attrs.getSize(), () -> copyFile(job, source, target, attrs));
+        }
+    }
+
+    private void deleteDirectory(TreeJob job, PendingDirectory directory) throws SftpException, JSchException {
+        Vector<ChannelSftp.LsEntry> children;
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(job.sessionId)) {
+            children = lease.getChannel().ls(directory.path);
+        }
+
+        List<String> files = new ArrayList<>();
+        long entries = 0;
+        for (ChannelSftp.LsEntry child : children) {
+            String name = child.getFilename();
+            if (".".equals(name) || "..".equals(name)) {
+                continue;
+            }
+            entries++;
+            String childPath = joinPath(directory.path, name);
+            // Links are removed as links, never followed
+            if (child.getAttrs().isDir() && !child.getAttrs().isLink()) {
+                PendingDirectory subdirectory = new PendingDirectory(childPath, directory);
+                directory.pending.incrementAndGet();
+                job.submit(() -> deleteDirectory(job, subdirectory));
+            } else {
+                files.add(childPath);
+            }
+        }
+        job.discover(entries);
+
+        for (int start = 0; start < files.size(); start += FILE_BATCH_SIZE) {
+            List<String> batch = files.subList(start, Math.min(files.size(), start + FILE_BATCH_SIZE));
+            directory.pending.incrementAndGet();
+            job.submit(() -> {
+                deleteFiles(job, batch);
+                releaseDirectory(job, directory);
+            });
+        }
+        releaseDirectory(job, directory);
+    }
+
+    /**
+     * Removes the whole tree with one {@code rm -rf} on the host. Returns false when the
+     * command could not do it, in which case the SFTP walk takes over.
+     */
+    private boolean deleteWithExec(TreeJob job, String remotePath) {
+        ExecResult result;
+        try {
+            result = execService.execute(job.sessionId, "rm -rf -- " + SSHExecService.quote(remotePath), execTimeoutMs);
+        } catch (JSchException | IOException e) {
+            log.info("rm -rf of {} could not run ({}), deleting over SFTP", remotePath, e.getMessage());
+            return false;
+        }
+        if (!result.isSuccess()) {
+            log.info("rm -rf of {} failed (exit {}: {}), deleting over SFTP", remotePath,
+                    result.getExitCode(), result.getStderr().trim());
+            return false;
+        }
+        job.advance(job.discovered.get());
+        return true;
+    }
+
+    private void deleteFiles(TreeJob job, List<String> paths) throws SftpException, JSchException {
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(job.sessionId)) {
+            for (String path : paths) {
+                if (job.isStopped()) {
+                    return;
+                }
+                lease.getChannel().rm(path);
+                job.advance(1);
+            }
+        }
+    }
+
+    /**
+     * Marks one unit of a directory's work as done and removes the directory once its
+     * last child is gone, walking up to the parent the same way
+     */
+    private void releaseDirectory(TreeJob job, PendingDirectory directory) throws SftpException, JSchException {
+        PendingDirectory current = directory;
+        while (current != null && current.pending.decrementAndGet() == 0) {
+            if (job.isStopped()) {
+                return;
+            }
+            try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(job.sessionId)) {
+                lease.getChannel().rmdir(current.path);
+            }
+            job.advance(1);
+            current = current.parent;
+        }
+    }
+
+    private void copyDirectory(TreeJob job, String source, String target, SftpATTRS attrs)
+            throws SftpException, JSchException {
+        Vector<ChannelSftp.LsEntry> children;
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(job.sessionId)) {
+            ChannelSftp sftpChannel = lease.getChannel();
+            sftpChannel.mkdir(target);
+            sftpChannel.chmod(attrs.getPermissions() & 07777, target);
+            children = sftpChannel.ls(source);
+        }
+
+        for (ChannelSftp.LsEntry child : children) {
+            String name = child.getFilename();
+            SftpATTRS childAttrs = child.getAttrs();
+            if (".".equals(name) || "..".equals(name)) {
+                continue;
+            }
+            String childSource = joinPath(source, name);
+            String childTarget = joinPath(target, name);
+            if (childAttrs.isLink()) {
+                log.debug("Skipping symbolic link during copy: {}", childSource);
+            } else if (childAttrs.isDir()) {
+                job.submit(() -> copyDirectory(job, childSource, childTarget, childAttrs));
+            } else {
+                job.discover(childAttrs.getSize());
+                job.submit(() -> copyFile(job, childSource, childTarget, childAttrs));
+            }
+        }
+    }
+
+    private void copyFile(TreeJob job, String source, String target, SftpATTRS attrs) throws Exception {
+        chunkedTransferService.copyFile(job.sessionId, source, target, attrs.getSize(), job::transferred, job::isStopped);
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(job.sessionId)) {
+            lease.getChannel().chmod(attrs.getPermissions() & 07777, target);
+        }
+    }
+
+    private SftpATTRS lstat(String sessionId, String remotePath) throws SftpException, JSchException {
+        try (SFTPSessionManager.ChannelLease lease = sessionManager.borrowChannel(sessionId)) {
+            return lease.getChannel().lstat(remotePath);
+        }
+    }
+
+    private boolean exists(String sessionId, String remotePath) throws SftpException, JSchException {
+        try {
+            lstat(sessionId, remotePath);
+            return true;
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private String getFileName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Lexically collapses repeated slashes and resolves "." and ".." without following
+     * links. ".." above the root stays at the root; a relative path keeps leading "..".
+     */
+    static String normalizePath(String path) {
+        boolean absolute = path.startsWith("/");
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || ".".equals(segment)) {
+                continue;
+            }
+            if ("..".equals(segment)) {
+                if (!segments.isEmpty() && !"..".equals(segments.peekLast())) {
+                    segments.removeLast();
+                } else if (!absolute) {
+                    segments.addLast(segment);
+                }
+                continue;
+            }
+            segments.addLast(segment);
+        }
+        String joined = String.join("/", segments);
+        return absolute ? "/" + joined : joined;
+    }
+
+    private String trimTrailingSlash(String path) {
+        return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    private String joinPath(String parent, String name) {
+        return parent.endsWith("/") ? parent + name : parent + "/" + name;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
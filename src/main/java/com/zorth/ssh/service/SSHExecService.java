@@ -0,0 +1,193 @@
+package com.zorth.ssh.service;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSchException;
+import com.zorth.ssh.dto.ExecResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs single commands on the remote host over exec channels of the pooled SFTP
+ * sessions. stdout and stderr are drained by the calling thread as output arrives,
+ * the exit status is captured, and commands running past their timeout are killed.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SSHExecService {
+
+    // Shells report 126/127 when the command cannot be run or is not found
+    private static final int EXIT_NOT_EXECUTABLE = 126;
+    private static final int EXIT_NOT_FOUND = 127;
+    // SSH_MSG_CHANNEL_OPEN_FAILURE reasons (RFC 4254 section 5.1) that JSch leaves in the exit status
+    private static final int OPEN_ADMINISTRATIVELY_PROHIBITED = 1;
+    private static final int OPEN_UNKNOWN_CHANNEL_TYPE = 3;
+    // JSch's message when the server answers the exec request itself with a failure
+    private static final String REQUEST_REFUSED_MESSAGE = "failed to send channel request";
+
+    private final SFTPSessionManager sessionManager;
+
+    @Value("${ssh.exec.default-timeout-ms:60000}")
+    private long defaultTimeoutMs;
+
+    @Value("${ssh.exec.max-captured-bytes:1048576}")
+    private int maxCapturedBytes;
+
+    @Value("${ssh.exec.connect-timeout-ms:10000}")
+    private int connectTimeoutMs;
+
+    /**
+     * Bounded in-memory capture; output past the limit is dropped
+     */
+    private static class CappedOutputStream extends ByteArrayOutputStream {
+        private final int limit;
+
+        private CappedOutputStream(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            int accepted = Math.min(len, limit - count);
+            if (accepted > 0) {
+                super.write(b, off, accepted);
+            }
+        }
+    }
+
+    public boolean isAvailable(String sessionId) {
+        return sessionManager.isExecAllowed(sessionId);
+    }
+
+    public ExecResult execute(String sessionId, String command) throws JSchException, IOException {
+        return execute(sessionId, command, defaultTimeoutMs);
+    }
+
+    /**
+     * Runs {@code command} and captures its output (up to the configured cap per stream)
+     */
+    public ExecResult execute(String sessionId, String command, long timeoutMs) throws JSchException, IOException {
+        CappedOutputStream stdout = new CappedOutputStream(maxCapturedBytes);
+        CappedOutputStream stderr = new CappedOutputStream(maxCapturedBytes);
+        long start = System.nanoTime();
+        int exitCode = execute(sessionId, command, timeoutMs, stdout, stderr);
+        return new ExecResult(
+            exitCode,
+            stdout.toString(StandardCharsets.UTF_8),
+            stderr.toString(StandardCharsets.UTF_8),
+            exitCode == -1,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+        );
+    }
+
+    /**
+     * Runs {@code command}, streaming its stdout and stderr to the given streams.
+     * Returns the exit status, or -1 if the command was killed after {@code timeoutMs}.
+     * A command the host cannot run (exit 126/127) turns exec off for the session.
+     */
+    public int execute(String sessionId, String command, long timeoutMs, OutputStream stdout, OutputStream stderr)
+            throws JSchException, IOException {
+        log.debug("Executing remote command on {}: {}", sessionId, command);
+        try (SFTPSessionManager.ExecLease lease = sessionManager.openExecChannel(sessionId)) {
+            ChannelExec channel = lease.getChannel();
+            channel.setCommand(command);
+            InputStream out = channel.getInputStream();
+            InputStream err = channel.getErrStream();
+            try {
+                channel.connect(connectTimeoutMs);
+            } catch (JSchException e) {
+                // Only a definite refusal turns exec off; MaxSessions being reached or a timeout may clear up
+                if (isRefusal(channel, e)) {
+                    sessionManager.disableExec(sessionId);
+                } else {
+                    log.debug("Exec channel on {} could not be opened: {}", sessionId, e.getMessage());
+                }
+                throw e;
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            byte[] buffer = new byte[8192];
+            while (true) {
+                boolean drained = drain(out, stdout, buffer) | drain(err, stderr, buffer);
+                if (channel.isClosed() && out.available() == 0 && err.available() == 0) {
+                    break;
+                }
+                if (System.nanoTime() > deadline) {
+                    log.warn("Remote command timed out after {} ms on {}: {}", timeoutMs, sessionId, command);
+                    killQuietly(channel);
+                    return -1;
+                }
+                if (!drained) {
+                    sleep();
+                }
+            }
+            stdout.flush();
+            stderr.flush();
+
+            int exitCode = channel.getExitStatus();
+            if (exitCode == EXIT_NOT_EXECUTABLE || exitCode == EXIT_NOT_FOUND) {
+                sessionManager.disableExec(sessionId);
+            }
+            return exitCode;
+        }
+    }
+
+    /**
+     * Whether the server rejected exec for good: it prohibited or does not know the
+     * channel type, or it answered the exec request with a failure
+     */
+    private static boolean isRefusal(ChannelExec channel, JSchException e) {
+        int reason = channel.getExitStatus();
+        return reason == OPEN_ADMINISTRATIVELY_PROHIBITED
+                || reason == OPEN_UNKNOWN_CHANNEL_TYPE
+                || REQUEST_REFUSED_MESSAGE.equals(e.getMessage());
+    }
+
+    /**
+     * Quotes a value as a single shell word
+     */
+    public static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    private boolean drain(InputStream in, OutputStream target, byte[] buffer) throws IOException {
+        boolean read = false;
+        int available;
+        while ((available = in.available()) > 0) {
+            int length = in.read(buffer, 0, Math.min(available, buffer.length));
+            if (length <= 0) {
+                break;
+            }
+            target.write(buffer, 0, length);
+            read = true;
+        }
+        return read;
+    }
+
+    private void killQuietly(ChannelExec channel) {
+        try {
+            channel.sendSignal("KILL");
+        } catch (Exception e) {
+            log.debug("Could not signal timed out command: {}", e.getMessage());
+        }
+    }
+
+    private void sleep() throws InterruptedIOException {
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for remote command");
+        }
+    }
+}
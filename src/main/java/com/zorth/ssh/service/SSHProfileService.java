@@ -38,6 +38,7 @@ public class SSHProfileService {
         existingProfile.setPort(updatedProfile.getPort());
         existingProfile.setUsername(updatedProfile.getUsername());
         existingProfile.setAuthType(updatedProfile.getAuthType());
+        existingProfile.setExecEnabled(updatedProfile.getExecEnabled());
         
         if (updatedProfile.getAuthType() == SSHProfile.AuthType.PASSWORD) {
             existingProfile.setEncryptedPassword(updatedProfile.getEncryptedPassword());
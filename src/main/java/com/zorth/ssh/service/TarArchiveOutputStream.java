@@ -0,0 +1,155 @@
+package com.zorth.ssh.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Minimal streaming POSIX tar writer. Entries are written as ustar headers; names
+ * longer than the 100-byte header field and sizes beyond 8 GiB are carried in a
+ * preceding pax extended header, so no size or path limits apply.
+ * Call {@link #putEntry}, write exactly the declared number of bytes, then {@link #closeEntry}.
+ */
+class TarArchiveOutputStream extends OutputStream {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+    private static final byte TYPE_FILE = '0';
+    private static final byte TYPE_DIRECTORY = '5';
+    private static final byte TYPE_PAX_HEADER = 'x';
+
+    private final OutputStream out;
+    private long entryRemaining;
+    private long entryWritten;
+    private boolean finished;
+
+    TarArchiveOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    void putEntry(String name, boolean directory, long size, int mode, long mtimeSeconds) throws IOException {
+        String entryName = directory && !name.endsWith("/") ? name + "/" : name;
+        long entrySize = directory ? 0 : size;
+        byte[] nameBytes = entryName.getBytes(StandardCharsets.UTF_8);
+
+        StringBuilder pax = new StringBuilder();
+        if (nameBytes.length > 100) {
+            appendPaxRecord(pax, "path", entryName);
+        }
+        if (entrySize > MAX_OCTAL_SIZE) {
+            appendPaxRecord(pax, "size", Long.toString(entrySize));
+        }
+        if (pax.length() > 0) {
+            byte[] paxBytes = pax.toString().getBytes(StandardCharsets.UTF_8);
+            writeHeader("PaxHeaders/" + entryName, TYPE_PAX_HEADER, paxBytes.length, 0644, mtimeSeconds);
+            out.write(paxBytes);
+            pad(paxBytes.length);
+        }
+
+        writeHeader(entryName, directory ? TYPE_DIRECTORY : TYPE_FILE, entrySize, mode, mtimeSeconds);
+        entryRemaining = entrySize;
+        entryWritten = 0;
+    }
+
+    void closeEntry() throws IOException {
+        if (entryRemaining != 0) {
+            throw new IOException("Tar entry is " + entryRemaining + " bytes short of its declared size");
+        }
+        pad(entryWritten);
+        entryWritten = 0;
+    }
+
+    /**
+     * Writes the end-of-archive marker without closing the underlying stream
+     */
+    void finish() throws IOException {
+        if (!finished) {
+            out.write(new byte[BLOCK_SIZE * 2]);
+            out.flush();
+            finished = true;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len > entryRemaining) {
+            throw new IOException("Tar entry exceeds its declared size by " + (len - entryRemaining) + " bytes");
+        }
+        out.write(b, off, len);
+        entryRemaining -= len;
+        entryWritten += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    private void writeHeader(String name, byte type, long size, int mode, long mtimeSeconds) throws IOException {
+        byte[] header = new byte[BLOCK_SIZE];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, 100));
+        putOctal(header, 100, 8, mode & 07777);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size > MAX_OCTAL_SIZE ? 0 : size);
+        putOctal(header, 136, 12, Math.max(0, mtimeSeconds));
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        header[156] = type;
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        putOctal(header, 148, 7, checksum);
+        header[155] = ' ';
+        out.write(header);
+    }
+
+    /**
+     * Writes {@code value} as zero-padded octal followed by a NUL terminator
+     */
+    private void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        int digits = length - 1;
+        for (int i = 0; i < digits; i++) {
+            int index = i - (digits - octal.length());
+            header[offset + i] = (byte) (index < 0 ? '0' : octal.charAt(index));
+        }
+        header[offset + digits] = 0;
+    }
+
+    /**
+     * Appends a pax record of the form "LEN key=value\n", where LEN counts its own digits
+     */
+    private void appendPaxRecord(StringBuilder pax, String key, String value) {
+        int payload = key.getBytes(StandardCharsets.UTF_8).length + value.getBytes(StandardCharsets.UTF_8).length + 3;
+        int length = payload + Integer.toString(payload).length();
+        if (Integer.toString(length).length() != Integer.toString(payload).length()) {
+            length = payload + Integer.toString(length).length();
+        }
+        pax.append(length).append(' ').append(key).append('=').append(value).append('\n');
+    }
+
+    private void pad(long written) throws IOException {
+        int remainder = (int) (written % BLOCK_SIZE);
+        if (remainder != 0) {
+            out.write(new byte[BLOCK_SIZE - remainder]);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.zorth.ssh.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Merges keystrokes into fewer SSH writes. The first keystroke after a quiet period
+ * is written immediately; anything arriving within the batch window after a write is
+ * collected and sent as one write when the window closes. Each terminal keeps a single
+ * cached channel output stream instead of asking JSch for a new one per message.
+ * Writes happen outside the batch lock, so a terminal whose channel blocks never holds
+ * up keystrokes queueing for it, and deferred flushes run on a pooled writer so one
+ * slow terminal cannot delay the others.
+ */
+@Slf4j
+@Service
+public class TerminalInputBatcher {
+
+    private static class InputBatch {
+        private final OutputStream out;
+        // Serializes channel writes; taken before the batch lock, never while holding it
+        private final Object writeLock = new Object();
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream(256);
+        private long lastFlushNanos;
+        private boolean flushScheduled;
+
+        private InputBatch(OutputStream out, long windowNanos) {
+            this.out = out;
+            this.lastFlushNanos = System.nanoTime() - windowNanos;
+        }
+    }
+
+    private final ConcurrentMap<String, InputBatch> batches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "terminal-input-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger writerCount = new AtomicInteger();
+    private final ExecutorService flushWriters = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "terminal-input-writer-" + writerCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${terminal.input.batch-window-ms:5}")
+    private long batchWindowMs;
+
+    /**
+     * Registers the channel output stream of a terminal
+     */
+    public void open(String id, OutputStream out) {
+        batches.put(id, new InputBatch(out, TimeUnit.MILLISECONDS.toNanos(batchWindowMs)));
+    }
+
+    public void close(String id) {
+        InputBatch batch = batches.remove(id);
+        if (batch != null) {
+            flushQuietly(id, batch);
+        }
+    }
+
+    public boolean isOpen(String id) {
+        return batches.containsKey(id);
+    }
+
+    /**
+     * Queues input for the terminal. Returns false if the terminal is not open.
+     */
+    public boolean write(String id, byte[] data, int offset, int length) throws IOException {
+        InputBatch batch = batches.get(id);
+        if (batch == null) {
+            return false;
+        }
+        boolean writeNow;
+        synchronized (batch) {
+            batch.pending.write(data, offset, length);
+            if (batch.flushScheduled) {
+                return true;
+            }
+            long windowNanos = TimeUnit.MILLISECONDS.toNanos(batchWindowMs);
+            long sinceLastFlush = System.nanoTime() - batch.lastFlushNanos;
+            writeNow = sinceLastFlush >= windowNanos;
+            if (!writeNow) {
+                batch.flushScheduled = true;
+                // The scheduler thread only hands off; the blocking write runs on a writer
+                flushScheduler.schedule(() -> flushWriters.execute(() -> flushQuietly(id, batch)),
+                        windowNanos - sinceLastFlush, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (writeNow) {
+            flush(batch);
+        }
+        return true;
+    }
+
+    /**
+     * Takes whatever is pending and writes it to the channel. The pending buffer is
+     * emptied before the write, so a failed write never leaves input to be resent.
+     */
+    private void flush(InputBatch batch) throws IOException {
+        synchronized (batch.writeLock) {
+            byte[] data;
+            synchronized (batch) {
+                batch.flushScheduled = false;
+                if (batch.pending.size() == 0) {
+                    return;
+                }
+                data = batch.pending.toByteArray();
+                batch.pending.reset();
+                batch.lastFlushNanos = System.nanoTime();
+            }
+            batch.out.write(data);
+            batch.out.flush();
+        }
+    }
+
+    private void flushQuietly(String id, InputBatch batch) {
+        try {
+            flush(batch);
+        } catch (IOException e) {
+            log.warn("Failed to write batched input for terminal {}: {}", id, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushScheduler.shutdownNow();
+        flushWriters.shutdownNow();
+    }
+}
@@ -0,0 +1,287 @@
+package com.zorth.ssh.service;
+
+import com.jcraft.jsch.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves shell output from SSH channels to terminal clients.
+ *
+ * <p>Two modes, selected with {@code terminal.pump.mode}:
+ * <ul>
+ *   <li>{@code poll} (default) - a single poller checks every channel for readable bytes
+ *       and hands ready channels to a small fixed worker pool, so thread count no longer
+ *       grows with the number of open shells. While every shell is idle the poller backs
+ *       off exponentially from {@code idle-poll-ms} to {@code max-idle-poll-ms}.</li>
+ *   <li>{@code thread} - one managed platform thread per shell doing blocking reads</li>
+ * </ul>
+ * Pump threads must stay alive for the lifetime of the pipe: JSch's channel stream is a
+ * PipedInputStream that fails with "Read end dead" once the last reading thread exits,
+ * which is why the poll workers are a fixed pool without core timeout.
+ */
+@Slf4j
+@Service
+public class TerminalOutputPump {
+
+    /**
+     * Receives shell output. {@link #write} must consume the bytes before returning,
+     * the buffer is reused.
+     */
+    public interface OutputSink {
+        void write(byte[] data, int offset, int length) throws IOException;
+
+        /**
+         * Backpressure hook - while this returns false no more output is read for the shell
+         */
+        default boolean isReady() {
+            return true;
+        }
+
+        /**
+         * Called once when the shell ends; {@code error} is null on a clean EOF
+         */
+        void closed(Exception error);
+    }
+
+    private static class Registration {
+        private final String id;
+        private final Channel channel;
+        private final InputStream in;
+        private final OutputSink sink;
+        private final long coalesceWindowNanos;
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile long lastDispatchNanos;
+
+        private Registration(String id, Channel channel, InputStream in, OutputSink sink, long coalesceWindowMs) {
+            this.id = id;
+            this.channel = channel;
+            this.in = in;
+            this.sink = sink;
+            this.coalesceWindowNanos = TimeUnit.MILLISECONDS.toNanos(coalesceWindowMs);
+            this.lastDispatchNanos = System.nanoTime() - coalesceWindowNanos;
+        }
+    }
+
+    private final ConcurrentMap<String, Registration> registrations = new ConcurrentHashMap<>();
+    private final AtomicInteger livePumpThreads = new AtomicInteger();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    @Value("${terminal.pump.mode:poll}")
+    private String mode;
+
+    @Value("${terminal.pump.poll-workers:8}")
+    private int pollWorkers;
+
+    @Value("${terminal.pump.idle-poll-ms:2}")
+    private long idlePollMs;
+
+    @Value("${terminal.pump.max-idle-poll-ms:50}")
+    private long maxIdlePollMs;
+
+    @Value("${terminal.pump.max-read-bytes:65536}")
+    private int maxReadBytes;
+
+    private ExecutorService threadPerShellExecutor;
+    private ThreadPoolExecutor pollWorkerExecutor;
+    private ThreadLocal<byte[]> workerBuffer;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        if (isPollMode()) {
+            pollWorkerExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(pollWorkers, runnable -> {
+                Thread thread = new Thread(runnable, "terminal-pump-worker-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            pollWorkerExecutor.prestartAllCoreThreads();
+            workerBuffer = ThreadLocal.withInitial(() -> new byte[maxReadBytes]);
+            Thread poller = new Thread(this::pollLoop, "terminal-pump-poller");
+            poller.setDaemon(true);
+            poller.start();
+        } else {
+            threadPerShellExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "terminal-pump-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        log.info("Terminal output pump started in {} mode", isPollMode() ? "poll" : "thread");
+    }
+
+    /**
+     * Starts pumping output of {@code channel} to {@code sink}. Output arriving within
+     * {@code coalesceWindowMs} of the previous write is batched into the next one.
+     */
+    public void register(String id, Channel channel, InputStream in, OutputSink sink, long coalesceWindowMs) {
+        Registration registration = new Registration(id, channel, in, sink, coalesceWindowMs);
+        if (isPollMode()) {
+            registrations.put(id, registration);
+        } else {
+            threadPerShellExecutor.execute(() -> blockingLoop(registration));
+        }
+    }
+
+    public String getMode() {
+        return isPollMode() ? "poll" : "thread";
+    }
+
+    /**
+     * Number of threads currently dedicated to moving terminal output
+     */
+    public int getLivePumpThreads() {
+        return isPollMode() ? pollWorkerExecutor.getPoolSize() + 1 : livePumpThreads.get();
+    }
+
+    public int getActiveShellCount() {
+        return isPollMode() ? registrations.size() : livePumpThreads.get();
+    }
+
+    private boolean isPollMode() {
+        return "poll".equalsIgnoreCase(mode);
+    }
+
+    private void blockingLoop(Registration registration) {
+        livePumpThreads.incrementAndGet();
+        log.info("Starting to read from SSH channel for session: {}", registration.id);
+        byte[] buffer = new byte[maxReadBytes];
+        Exception error = null;
+        try {
+            int length;
+            while ((length = registration.in.read(buffer, 0, buffer.length)) != -1) {
+                long sinceLastWrite = System.nanoTime() - registration.lastDispatchNanos;
+                if (sinceLastWrite < registration.coalesceWindowNanos) {
+                    TimeUnit.NANOSECONDS.sleep(registration.coalesceWindowNanos - sinceLastWrite);
+                }
+                length += drainAvailable(registration.in, buffer, length);
+                while (!registration.sink.isReady()) {
+                    Thread.sleep(Math.max(1, TimeUnit.NANOSECONDS.toMillis(registration.coalesceWindowNanos)));
+                }
+                registration.sink.write(buffer, 0, length);
+                registration.lastDispatchNanos = System.nanoTime();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            livePumpThreads.decrementAndGet();
+            finish(registration, error);
+        }
+    }
+
+    private void pollLoop() {
+        long idleSleepMs = Math.max(1, idlePollMs);
+        long maxSleepMs = Math.max(idleSleepMs, maxIdlePollMs);
+        while (running.get()) {
+            boolean dispatched = false;
+            boolean active = false;
+            long now = System.nanoTime();
+            for (Registration registration : registrations.values()) {
+                if (registration.busy.get() || now - registration.lastDispatchNanos < registration.coalesceWindowNanos) {
+                    active = true;
+                    continue;
+                }
+                try {
+                    if (registration.in.available() > 0) {
+                        active = true;
+                        if (registration.sink.isReady() && registration.busy.compareAndSet(false, true)) {
+                            pollWorkerExecutor.execute(() -> service(registration));
+                            dispatched = true;
+                        }
+                    } else if (registration.channel.isClosed() || registration.channel.isEOF()) {
+                        finish(registration, null);
+                    }
+                } catch (IOException e) {
+                    finish(registration, e);
+                } catch (RuntimeException e) {
+                    log.error("Unexpected error polling terminal {}: ", registration.id, e);
+                    finish(registration, e);
+                }
+            }
+            // Output resets the backoff; each fully idle pass doubles the sleep up to the cap
+            if (active) {
+                idleSleepMs = Math.max(1, idlePollMs);
+            }
+            if (!dispatched) {
+                try {
+                    Thread.sleep(idleSleepMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (!active) {
+                    idleSleepMs = Math.min(maxSleepMs, idleSleepMs * 2);
+                }
+            }
+        }
+    }
+
+    private void service(Registration registration) {
+        try {
+            byte[] buffer = workerBuffer.get();
+            int length = drainAvailable(registration.in, buffer, 0);
+            if (length > 0) {
+                registration.sink.write(buffer, 0, length);
+            }
+            registration.lastDispatchNanos = System.nanoTime();
+        } catch (IOException e) {
+            finish(registration, e);
+        } catch (RuntimeException e) {
+            log.error("Unexpected error pumping terminal {}: ", registration.id, e);
+            finish(registration, e);
+        } finally {
+            registration.busy.set(false);
+        }
+    }
+
+    /**
+     * Reads whatever is already buffered without blocking, up to the end of {@code buffer}
+     */
+    private int drainAvailable(InputStream in, byte[] buffer, int offset) throws IOException {
+        int total = 0;
+        int available;
+        while (offset + total < buffer.length && (available = in.available()) > 0) {
+            int read = in.read(buffer, offset + total, Math.min(available, buffer.length - offset - total));
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private void finish(Registration registration, Exception error) {
+        if (registration.finished.compareAndSet(false, true)) {
+            registrations.remove(registration.id, registration);
+            log.info("SSH channel reading ended for session: {}", registration.id);
+            registration.sink.closed(error);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running.set(false);
+        if (pollWorkerExecutor != null) {
+            pollWorkerExecutor.shutdownNow();
+        }
+        if (threadPerShellExecutor != null) {
+            threadPerShellExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.zorth.ssh.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copy buffers shared by the SFTP copy loops. Sizes are rounded up to a power of two
+ * between the configured minimum and maximum, and each size keeps a bounded free
+ * list, so a busy server reuses a handful of large buffers instead of allocating
+ * one per request.
+ */
+@Component
+public class TransferBufferPool {
+
+    /**
+     * A borrowed buffer; closing it hands the buffer back to the pool
+     */
+    public final class Buffer implements AutoCloseable {
+        private final byte[] bytes;
+
+        private Buffer(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        public byte[] bytes() {
+            return bytes;
+        }
+
+        @Override
+        public void close() {
+            release(bytes);
+        }
+    }
+
+    private static class SizeClass {
+        private final Queue<byte[]> free = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger freeCount = new AtomicInteger();
+        private final int maxFree;
+
+        private SizeClass(int maxFree) {
+            this.maxFree = maxFree;
+        }
+    }
+
+    private final int minBufferSize;
+    private final int maxBufferSize;
+    private final SizeClass[] sizeClasses;
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+
+    public TransferBufferPool(@Value("${sftp.transfer.buffer.min-bytes:8192}") int minBytes,
+                              @Value("${sftp.transfer.buffer.max-bytes:4194304}") int maxBytes,
+                              @Value("${sftp.transfer.buffer.max-pooled-bytes-per-size:8388608}") long maxPooledBytesPerSize) {
+        this.minBufferSize = roundUp(Math.max(1024, minBytes));
+        this.maxBufferSize = Math.max(minBufferSize, roundUp(maxBytes));
+        int classes = Integer.numberOfTrailingZeros(maxBufferSize) - Integer.numberOfTrailingZeros(minBufferSize) + 1;
+        this.sizeClasses = new SizeClass[classes];
+        for (int i = 0; i < classes; i++) {
+            long size = (long) minBufferSize << i;
+            sizeClasses[i] = new SizeClass((int) Math.max(1, Math.min(Integer.MAX_VALUE, maxPooledBytesPerSize / size)));
+        }
+    }
+
+    public int getMinBufferSize() {
+        return minBufferSize;
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    /**
+     * Borrows a buffer of at least {@code size} bytes. Sizes above the pool's maximum
+     * are allocated on demand and dropped again on close.
+     */
+    public Buffer acquire(int size) {
+        if (size > maxBufferSize) {
+            allocations.incrementAndGet();
+            return new Buffer(new byte[size]);
+        }
+        int rounded = Math.max(minBufferSize, roundUp(size));
+        SizeClass sizeClass = sizeClasses[indexOf(rounded)];
+        byte[] bytes = sizeClass.free.poll();
+        if (bytes != null) {
+            sizeClass.freeCount.decrementAndGet();
+            reuses.incrementAndGet();
+        } else {
+            bytes = new byte[rounded];
+            allocations.incrementAndGet();
+        }
+        return new Buffer(bytes);
+    }
+
+    private void release(byte[] bytes) {
+        if (bytes.length > maxBufferSize) {
+            return;
+        }
+        SizeClass sizeClass = sizeClasses[indexOf(bytes.length)];
+        if (sizeClass.freeCount.incrementAndGet() <= sizeClass.maxFree) {
+            sizeClass.free.offer(bytes);
+        } else {
+            sizeClass.freeCount.decrementAndGet();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("allocations", allocations.get());
+        stats.put("reuses", reuses.get());
+        Map<Integer, Integer> free = new LinkedHashMap<>();
+        for (int i = 0; i < sizeClasses.length; i++) {
+            free.put(minBufferSize << i, sizeClasses[i].freeCount.get());
+        }
+        stats.put("freeBuffersBySize", free);
+        return stats;
+    }
+
+    private int indexOf(int size) {
+        return Integer.numberOfTrailingZeros(size) - Integer.numberOfTrailingZeros(minBufferSize);
+    }
+
+    static int roundUp(int size) {
+        if (size <= 1) {
+            return 1;
+        }
+        int highest = Integer.highestOneBit(size - 1) << 1;
+        return highest > 0 ? highest : 1 << 30;
+    }
+}
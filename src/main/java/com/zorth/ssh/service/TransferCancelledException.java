@@ -0,0 +1,16 @@
+package com.zorth.ssh.service;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown out of a copy loop when its transfer has been cancelled. It is an IOException
+ * so the usual handlers invalidate the channel the loop was using.
+ */
+public class TransferCancelledException extends InterruptedIOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public TransferCancelledException(String transferId) {
+        super("Transfer " + transferId + " was cancelled");
+    }
+}
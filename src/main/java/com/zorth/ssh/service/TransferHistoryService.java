@@ -0,0 +1,64 @@
+package com.zorth.ssh.service;
+
+import com.zorth.ssh.dto.HostThroughputStats;
+import com.zorth.ssh.dto.TransferProgress;
+import com.zorth.ssh.entity.TransferRecord;
+import com.zorth.ssh.repository.TransferRecordRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Read side of the transfer history written by {@link TransferHistoryWriter}
+ */
+@Service
+@RequiredArgsConstructor
+public class TransferHistoryService {
+
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final TransferRecordRepository transferRecordRepository;
+
+    /**
+     * Records finished within the last {@code days} days, newest first, optionally
+     * narrowed to one profile or one host:port
+     */
+    public Page<TransferRecord> findRecords(Long profileId, String host, int days, int page, int size) {
+        if (profileId != null && host != null) {
+            throw new IllegalArgumentException("Filter by profile or by host, not both");
+        }
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page must be >= 0 and size between 1 and " + MAX_PAGE_SIZE);
+        }
+        LocalDateTime since = since(days);
+        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "finishedAt"));
+        if (profileId != null) {
+            return transferRecordRepository.findByProfileIdAndFinishedAtAfter(profileId, since, pageable);
+        }
+        if (host != null) {
+            return transferRecordRepository.findByHostAndFinishedAtAfter(host, since, pageable);
+        }
+        return transferRecordRepository.findByFinishedAtAfter(since, pageable);
+    }
+
+    /**
+     * Throughput of completed transfers per host:port over the last {@code days} days,
+     * busiest host first
+     */
+    public List<HostThroughputStats> getHostThroughput(int days) {
+        return transferRecordRepository.aggregateByHost(TransferProgress.TransferStatus.COMPLETED.name(), since(days));
+    }
+
+    private static LocalDateTime since(int days) {
+        if (days < 1) {
+            throw new IllegalArgumentException("Days must be at least 1");
+        }
+        return LocalDateTime.now().minusDays(days);
+    }
+}
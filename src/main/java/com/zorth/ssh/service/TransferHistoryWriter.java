@@ -0,0 +1,175 @@
+package com.zorth.ssh.service;
+
+import com.zorth.ssh.entity.TransferRecord;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persists finished transfers off the transfer threads. {@link #record} only builds the
+ * row and offers it to a bounded queue; a single writer thread drains the queue and
+ * inserts rows with JDBC batch statements, one round trip per batch. When the database
+ * falls behind far enough to fill the queue, new records are dropped rather than
+ * slowing down transfers.
+ */
+@Slf4j
+@Service
+public class TransferHistoryWriter {
+
+    private static final String INSERT_SQL = "INSERT INTO transfer_records (transfer_id, profile_id, host, " +
+            "remote_path, operation, status, bytes_transferred, total_bytes, duration_ms, " +
+            "throughput_bytes_per_second, error_message, started_at, finished_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private static final int MAX_PATH_LENGTH = 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final BlockingQueue<TransferRecord> pending;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public TransferHistoryWriter(JdbcTemplate jdbcTemplate,
+                                 @Value("${transfer.history.enabled:true}") boolean enabled,
+                                 @Value("${transfer.history.queue-capacity:10000}") int queueCapacity,
+                                 @Value("${transfer.history.batch-size:200}") int batchSize,
+                                 @Value("${transfer.history.flush-interval-ms:1000}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = flushIntervalMs;
+        this.pending = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.writer = new Thread(this::writeLoop, "transfer-history-writer");
+        this.writer.setDaemon(true);
+        if (enabled) {
+            writer.start();
+        }
+    }
+
+    /**
+     * Queues the outcome of a finished transfer. Transfers without a host (deletes and
+     * other jobs that do not move bytes to or from a server) are not recorded.
+     */
+    public void record(TransferState state) {
+        if (!enabled || state.getHost() == null) {
+            return;
+        }
+        long durationMs = state.getElapsedMillis();
+        long bytes = state.getTransferredBytes();
+        LocalDateTime startedAt = state.getStartTime();
+
+        TransferRecord record = new TransferRecord();
+        record.setTransferId(state.getTransferId());
+        record.setProfileId(state.getProfileId());
+        record.setHost(state.getHost());
+        record.setRemotePath(truncate(state.getRemotePath(), MAX_PATH_LENGTH));
+        record.setOperation(state.getOperation());
+        record.setStatus(state.getStatus().name());
+        record.setBytesTransferred(bytes);
+        record.setTotalBytes(state.getTotalBytes());
+        record.setDurationMs(durationMs);
+        record.setThroughputBytesPerSecond(durationMs > 0 ? bytes * 1000 / durationMs : 0);
+        record.setErrorMessage(truncate(state.getErrorMessage(), MAX_ERROR_LENGTH));
+        record.setStartedAt(startedAt);
+        record.setFinishedAt(startedAt.plusNanos(durationMs * 1_000_000));
+
+        if (!pending.offer(record)) {
+            long total = dropped.incrementAndGet();
+            // Log the first drop and then every thousandth so a stalled database does not flood the log
+            if (total == 1 || total % 1000 == 0) {
+                log.warn("Transfer history queue is full, dropped {} records so far", total);
+            }
+        }
+    }
+
+    /**
+     * Number of records dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void writeLoop() {
+        List<TransferRecord> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                TransferRecord first = pending.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<TransferRecord> batch) {
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, record) -> {
+                ps.setString(1, record.getTransferId());
+                ps.setObject(2, record.getProfileId());
+                ps.setString(3, record.getHost());
+                ps.setString(4, record.getRemotePath());
+                ps.setString(5, record.getOperation());
+                ps.setString(6, record.getStatus());
+                ps.setLong(7, record.getBytesTransferred());
+                ps.setLong(8, record.getTotalBytes());
+                ps.setLong(9, record.getDurationMs());
+                ps.setLong(10, record.getThroughputBytesPerSecond());
+                ps.setString(11, record.getErrorMessage());
+                ps.setTimestamp(12, Timestamp.valueOf(record.getStartedAt()));
+                ps.setTimestamp(13, Timestamp.valueOf(record.getFinishedAt()));
+            });
+            log.debug("Wrote {} transfer history records", batch.size());
+        } catch (DataAccessException e) {
+            log.error("Failed to write {} transfer history records: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    /**
+     * Stops the writer thread and writes whatever is still queued
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<TransferRecord> batch = new ArrayList<>(batchSize);
+        while (pending.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.zorth.ssh.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Publishes transfer progress at a fixed cadence instead of on every update.
+ * Updates only mark a transfer dirty; each flush snapshots and serializes every
+ * dirty transfer once, sends it to the transfer's own topic and sends all of them
+ * together as one JSON array to {@value #ALL_TRANSFERS_TOPIC}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TransferProgressBroadcaster {
+
+    public static final String TRANSFER_TOPIC_PREFIX = "/topic/transfer-progress/";
+    public static final String ALL_TRANSFERS_TOPIC = "/topic/transfer-progress";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final Queue<TransferState> dirty = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Queues the transfer for the next flush. TransferState calls this at most once
+     * between flushes, however often the transfer changes.
+     */
+    void markDirty(TransferState state) {
+        dirty.add(state);
+    }
+
+    @Scheduled(fixedRateString = "${transfer.progress.broadcast-interval-ms:250}")
+    public void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        // Transfers changing during the flush queue up again for the next one
+        int pending = dirty.size();
+        List<byte[]> frames = new ArrayList<>(pending);
+        TransferState state;
+        while (pending-- > 0 && (state = dirty.poll()) != null) {
+            state.clearDirty();
+            try {
+                byte[] json = objectMapper.writeValueAsBytes(state.snapshot());
+                send(TRANSFER_TOPIC_PREFIX + state.getTransferId(), json);
+                frames.add(json);
+            } catch (Exception e) {
+                log.error("Error sending progress update for transfer {}: {}", state.getTransferId(), e.getMessage(), e);
+            }
+        }
+        if (!frames.isEmpty()) {
+            send(ALL_TRANSFERS_TOPIC, joinArray(frames));
+        }
+        log.debug("Published progress of {} transfers", frames.size());
+    }
+
+    /**
+     * Sends already serialized JSON so the broker's converter does not serialize again
+     */
+    private void send(String destination, byte[] json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(json, accessor.getMessageHeaders()));
+    }
+
+    private byte[] joinArray(List<byte[]> frames) {
+        int size = 2 + frames.size();
+        for (byte[] frame : frames) {
+            size += frame.length;
+        }
+        ByteArrayOutputStream array = new ByteArrayOutputStream(size);
+        array.write('[');
+        for (int i = 0; i < frames.size(); i++) {
+            if (i > 0) {
+                array.write(',');
+            }
+            array.writeBytes(frames.get(i));
+        }
+        array.write(']');
+        return array.toByteArray();
+    }
+}
@@ -1,198 +1,392 @@
 package com.zorth.ssh.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.zorth.ssh.dto.TransferProgress;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
 public class TransferProgressTracker {
     
-    private final SimpMessagingTemplate messagingTemplate;
-    private final ObjectMapper objectMapper;
-    private final ConcurrentMap<String, TransferProgress> activeTransfers = new ConcurrentHashMap<>();
-    private final ConcurrentMap<String, SpeedCalculator> speedCalculators = new ConcurrentHashMap<>();
+    private final TransferProgressBroadcaster broadcaster;
+    private final TransferHistoryWriter historyWriter;
+    private final SFTPSessionManager sessionManager;
+    private final SFTPChunkedTransferService chunkedTransferService;
+    private final ConcurrentMap<String, TransferState> activeTransfers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ResumableUploadState> resumableUploads = new ConcurrentHashMap<>();
+    // Finished transfers in the order they finished; with one retention period for all
+    // of them this is also the order in which they expire
+    private final Queue<FinishedTransfer> retiring = new ConcurrentLinkedQueue<>();
+    private final RecentTransfers recentTransfers;
+    private final long retentionNanos;
+    private final long resumableIdleTimeoutNanos;
     
-    public TransferProgressTracker(SimpMessagingTemplate messagingTemplate, ObjectMapper objectMapper) {
-        this.messagingTemplate = messagingTemplate;
-        this.objectMapper = objectMapper;
+    public TransferProgressTracker(TransferProgressBroadcaster broadcaster,
+                                   TransferHistoryWriter historyWriter,
+                                   SFTPSessionManager sessionManager,
+                                   SFTPChunkedTransferService chunkedTransferService,
+                                   @Value("${transfer.progress.retention-ms:5000}") long retentionMs,
+                                   @Value("${transfer.progress.recent-capacity:256}") int recentCapacity,
+                                   @Value("${transfer.resumable.idle-timeout-ms:3600000}") long resumableIdleTimeoutMs) {
+        this.broadcaster = broadcaster;
+        this.historyWriter = historyWriter;
+        this.sessionManager = sessionManager;
+        this.chunkedTransferService = chunkedTransferService;
+        this.resumableIdleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(resumableIdleTimeoutMs);
+        this.retentionNanos = TimeUnit.MILLISECONDS.toNanos(retentionMs);
+        this.recentTransfers = new RecentTransfers(recentCapacity);
     }
     
-    public static class SpeedCalculator {
-        private long lastBytes = 0;
-        private LocalDateTime lastTime = LocalDateTime.now();
-        private double smoothedSpeed = 0;
-        private static final double SMOOTHING_FACTOR = 0.3; // For exponential smoothing
+    private record FinishedTransfer(String transferId, TransferState state, long expiresAtNanos) {
+    }
+    
+    /**
+     * Fixed-size ring of final snapshots of reaped transfers, newest last, so clients
+     * that subscribe after a transfer ended still learn how it ended
+     */
+    private static class RecentTransfers {
+        private final TransferProgress[] ring;
+        private int next;
+        private int size;
+        
+        private RecentTransfers(int capacity) {
+            this.ring = new TransferProgress[Math.max(1, capacity)];
+        }
+        
+        private synchronized void add(TransferProgress progress) {
+            ring[next] = progress;
+            next = (next + 1) % ring.length;
+            size = Math.min(size + 1, ring.length);
+        }
         
-        public long calculateSpeed(long currentBytes) {
-            LocalDateTime now = LocalDateTime.now();
-            long timeDiffMs = ChronoUnit.MILLIS.between(lastTime, now);
-            
-            if (timeDiffMs > 0 && currentBytes > lastBytes) {
-                long bytesDiff = currentBytes - lastBytes;
-                double currentSpeed = (bytesDiff * 1000.0) / timeDiffMs; // bytes per second
-                
-                // Apply exponential smoothing to reduce speed fluctuations
-                if (smoothedSpeed == 0) {
-                    smoothedSpeed = currentSpeed;
-                } else {
-                    smoothedSpeed = SMOOTHING_FACTOR * currentSpeed + (1 - SMOOTHING_FACTOR) * smoothedSpeed;
+        private synchronized TransferProgress find(String transferId) {
+            for (int i = 1; i <= size; i++) {
+                TransferProgress progress = ring[(next - i + ring.length) % ring.length];
+                if (transferId.equals(progress.getSessionId())) {
+                    return progress;
                 }
-                
-                lastBytes = currentBytes;
-                lastTime = now;
-                
-                return (long) smoothedSpeed;
             }
-            
-            return (long) smoothedSpeed;
+            return null;
+        }
+        
+        private synchronized List<TransferProgress> list() {
+            List<TransferProgress> list = new ArrayList<>(size);
+            for (int i = size; i >= 1; i--) {
+                list.add(ring[(next - i + ring.length) % ring.length]);
+            }
+            return list;
+        }
+    }
+    
+    /**
+     * Server-side state of a resumable chunked upload: where it goes and which
+     * byte ranges of the remote .part file have been written so far
+     */
+    public static class ResumableUploadState {
+        private final Long profileId;
+        private final String sessionId;
+        private final String remotePath;
+        private final String partPath;
+        private final long totalBytes;
+        private final TreeMap<Long, Long> receivedRanges = new TreeMap<>(); // start -> end (exclusive)
+        private volatile long lastActivityNanos = System.nanoTime();
+
+        public ResumableUploadState(Long profileId, String sessionId, String remotePath, String partPath, long totalBytes) {
+            this.profileId = profileId;
+            this.sessionId = sessionId;
+            this.remotePath = remotePath;
+            this.partPath = partPath;
+            this.totalBytes = totalBytes;
+        }
+
+        public Long getProfileId() {
+            return profileId;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public String getRemotePath() {
+            return remotePath;
+        }
+
+        public String getPartPath() {
+            return partPath;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * Records [start, end) as received, merging it with overlapping or adjacent ranges
+         */
+        public synchronized void addRange(long start, long end) {
+            lastActivityNanos = System.nanoTime();
+            if (end <= start) {
+                return;
+            }
+            Map.Entry<Long, Long> floor = receivedRanges.floorEntry(start);
+            if (floor != null && floor.getValue() >= start) {
+                start = floor.getKey();
+                end = Math.max(end, floor.getValue());
+                receivedRanges.remove(floor.getKey());
+            }
+            Map.Entry<Long, Long> next;
+            while ((next = receivedRanges.ceilingEntry(start)) != null && next.getKey() <= end) {
+                end = Math.max(end, next.getValue());
+                receivedRanges.remove(next.getKey());
+            }
+            receivedRanges.put(start, end);
+        }
+
+        public synchronized long getReceivedBytes() {
+            return receivedRanges.entrySet().stream()
+                    .mapToLong(range -> range.getValue() - range.getKey())
+                    .sum();
+        }
+
+        public synchronized List<long[]> getReceivedRanges() {
+            List<long[]> ranges = new ArrayList<>();
+            receivedRanges.forEach((start, end) -> ranges.add(new long[]{start, end}));
+            return ranges;
+        }
+
+        public synchronized List<long[]> getMissingRanges() {
+            List<long[]> missing = new ArrayList<>();
+            long position = 0;
+            for (Map.Entry<Long, Long> range : receivedRanges.entrySet()) {
+                if (range.getKey() > position) {
+                    missing.add(new long[]{position, range.getKey()});
+                }
+                position = Math.max(position, range.getValue());
+            }
+            if (totalBytes > position) {
+                missing.add(new long[]{position, totalBytes});
+            }
+            return missing;
+        }
+
+        long getLastActivityNanos() {
+            return lastActivityNanos;
+        }
+
+        public synchronized boolean isComplete() {
+            return totalBytes >= 0 && getMissingRanges().isEmpty();
         }
     }
     
     public void startTransfer(String transferId, String fileName, String operation, long totalBytes) {
-        TransferProgress progress = new TransferProgress();
-        progress.setSessionId(transferId);
-        progress.setFileName(fileName);
-        progress.setOperation(operation);
-        progress.setTotalBytes(totalBytes);
-        progress.setTransferredBytes(0);
-        progress.setPercentage(0);
-        progress.setStartTime(LocalDateTime.now());
-        progress.setLastUpdate(LocalDateTime.now());
-        progress.setStatus(TransferProgress.TransferStatus.STARTING);
-        
-        activeTransfers.put(transferId, progress);
-        speedCalculators.put(transferId, new SpeedCalculator());
+        TransferState state = new TransferState(transferId, fileName, operation, totalBytes, broadcaster);
+        activeTransfers.put(transferId, state);
         
         // Send initial progress
-        sendProgressUpdate(transferId);
+        state.markDirty();
         
         log.info("Started tracking transfer: {} - {} {}", transferId, operation, fileName);
     }
     
+    /**
+     * Live state of a tracked transfer, for data paths that update it directly
+     * instead of looking it up on every buffer; null if the transfer is not tracked
+     */
+    public TransferState getState(String transferId) {
+        return activeTransfers.get(transferId);
+    }
+    
+    /**
+     * Records which profile, host and remote path a transfer moves bytes to or from, so
+     * its outcome is written to the transfer history when it finishes
+     */
+    public void describeTransfer(String transferId, String sessionId, String remotePath) {
+        TransferState state = activeTransfers.get(transferId);
+        if (state != null) {
+            state.describe(sessionManager.getProfileId(sessionId), sessionManager.getHostKey(sessionId), remotePath);
+        }
+    }
+    
     public void updateProgress(String transferId, long transferredBytes) {
-        TransferProgress progress = activeTransfers.get(transferId);
-        if (progress == null) {
+        TransferState state = activeTransfers.get(transferId);
+        if (state == null) {
             log.warn("No progress tracking found for transfer: {}", transferId);
             return;
         }
-        
-        synchronized (progress) {
-            SpeedCalculator calculator = speedCalculators.get(transferId);
-            if (calculator != null) {
-                long speed = calculator.calculateSpeed(transferredBytes);
-                progress.setSpeedBytesPerSecond(speed);
-                progress.setSpeedFormatted(TransferProgress.formatSpeed(speed));
-                
-                // Calculate estimated remaining time
-                if (speed > 0 && progress.getTotalBytes() > transferredBytes) {
-                    long remainingBytes = progress.getTotalBytes() - transferredBytes;
-                    progress.setEstimatedRemainingSeconds(remainingBytes / speed);
-                }
-            }
-            
-            // Always update the progress
-            progress.updateProgress(transferredBytes);
-            progress.setStatus(TransferProgress.TransferStatus.IN_PROGRESS);
-            progress.setLastUpdate(LocalDateTime.now());
-            
-            // Send progress update more frequently
-            boolean shouldUpdate = false;
-            if (progress.getTotalBytes() > 0) {
-                double percentageChange = (double) transferredBytes / progress.getTotalBytes() * 100.0;
-                shouldUpdate = (percentageChange - progress.getPercentage()) >= 0.1; // Update every 0.1%
-            }
-            
-            if (!shouldUpdate && transferredBytes - progress.getTransferredBytes() >= 256 * 1024) { // 256KB
-                shouldUpdate = true;
-            }
-            
-            if (shouldUpdate) {
-                log.debug("Sending progress update for transfer {}: {}% ({} bytes)", 
-                    transferId, progress.getPercentage(), transferredBytes);
-                sendProgressUpdate(transferId);
-            }
+        state.update(transferredBytes);
+    }
+    
+    /**
+     * Adjusts the expected total, for jobs that discover their size while running
+     */
+    public void updateTotal(String transferId, long totalBytes) {
+        TransferState state = activeTransfers.get(transferId);
+        if (state != null) {
+            state.setTotalBytes(totalBytes);
+        }
+    }
+    
+    /**
+     * Records the bandwidth cap currently applied to a transfer (0 = unlimited)
+     */
+    public void setBandwidthLimit(String transferId, long bytesPerSecond) {
+        TransferState state = activeTransfers.get(transferId);
+        if (state != null) {
+            state.setBandwidthLimit(bytesPerSecond);
         }
     }
     
+    /**
+     * Marks a transfer that has not started moving data as waiting for a scheduler slot
+     */
+    public void markQueued(String transferId) {
+        TransferState state = activeTransfers.get(transferId);
+        if (state != null) {
+            state.transition(TransferProgress.TransferStatus.STARTING, TransferProgress.TransferStatus.QUEUED);
+        }
+    }
+    
+    /**
+     * True once the transfer was cancelled or is no longer tracked at all
+     */
+    public boolean isCancelled(String transferId) {
+        TransferState state = activeTransfers.get(transferId);
+        return state == null || state.getStatus() == TransferProgress.TransferStatus.CANCELLED;
+    }
+    
+    /**
+     * Token that copy loops of {@code transferId} poll; never cancelled for untracked transfers
+     */
+    public CancellationToken getCancellationToken(String transferId) {
+        TransferState state = activeTransfers.get(transferId);
+        return state != null ? state.getCancellation() : CancellationToken.NONE;
+    }
+    
     public void completeTransfer(String transferId) {
-        TransferProgress progress = activeTransfers.get(transferId);
-        if (progress != null) {
-            progress.setStatus(TransferProgress.TransferStatus.COMPLETED);
-            progress.updateProgress(progress.getTotalBytes());
-            progress.setPercentage(100.0);
-            sendProgressUpdate(transferId);
-            
-            // Clean up after a delay
-            cleanupTransfer(transferId);
+        TransferState state = activeTransfers.get(transferId);
+        if (state != null && state.finish(TransferProgress.TransferStatus.COMPLETED, null)) {
+            cleanupTransfer(transferId, state);
             log.info("Completed transfer: {}", transferId);
         }
     }
     
     public void failTransfer(String transferId, String errorMessage) {
-        TransferProgress progress = activeTransfers.get(transferId);
-        if (progress != null) {
-            progress.setStatus(TransferProgress.TransferStatus.FAILED);
-            progress.setErrorMessage(errorMessage);
-            sendProgressUpdate(transferId);
-            
-            cleanupTransfer(transferId);
+        TransferState state = activeTransfers.get(transferId);
+        // A transfer that already ended (e.g. was cancelled and is aborting its copy loop) keeps its status
+        if (state != null && state.finish(TransferProgress.TransferStatus.FAILED, errorMessage)) {
+            cleanupTransfer(transferId, state);
             log.error("Failed transfer: {} - {}", transferId, errorMessage);
         }
     }
     
     public void cancelTransfer(String transferId) {
-        TransferProgress progress = activeTransfers.get(transferId);
-        if (progress != null) {
-            progress.setStatus(TransferProgress.TransferStatus.CANCELLED);
-            sendProgressUpdate(transferId);
-            
-            cleanupTransfer(transferId);
+        TransferState state = activeTransfers.get(transferId);
+        if (state != null && state.finish(TransferProgress.TransferStatus.CANCELLED, null)) {
+            state.getCancellation().cancel();
+            cleanupTransfer(transferId, state);
             log.info("Cancelled transfer: {}", transferId);
         }
+        // A cancelled resumable upload must not accept chunks again once its progress entry is gone
+        ResumableUploadState resumable = resumableUploads.remove(transferId);
+        if (resumable != null) {
+            chunkedTransferService.removeQuietlyAsync(resumable.getSessionId(), resumable.getPartPath());
+        }
     }
     
+    /**
+     * Snapshot of the transfer's progress, or its final snapshot if it finished recently
+     * enough to still be in the recent-transfers ring; null otherwise
+     */
     public TransferProgress getProgress(String transferId) {
-        return activeTransfers.get(transferId);
+        TransferState state = activeTransfers.get(transferId);
+        return state != null ? state.snapshot() : recentTransfers.find(transferId);
     }
     
-    private void sendProgressUpdate(String transferId) {
-        TransferProgress progress = activeTransfers.get(transferId);
-        if (progress != null) {
-            try {
-                // Send to WebSocket topic for real-time updates
-                String destination = "/topic/transfer-progress/" + transferId;
-                log.debug("Sending progress update to {}: {}", destination, progress);
-                
-                // Convert to JSON and log the actual message being sent
-                String jsonMessage = objectMapper.writeValueAsString(progress);
-                log.debug("Sending JSON message: {}", jsonMessage);
-                
-                messagingTemplate.convertAndSend(destination, progress);
-            } catch (Exception e) {
-                log.error("Error sending progress update for transfer {}: {}", transferId, e.getMessage(), e);
-            }
+    /**
+     * Final snapshots of recently finished transfers, oldest first
+     */
+    public List<TransferProgress> getRecentTransfers() {
+        return recentTransfers.list();
+    }
+    
+    /**
+     * Snapshots of every tracked transfer, including finished ones still in retention
+     */
+    public List<TransferProgress> getActiveTransfers() {
+        List<TransferProgress> list = new ArrayList<>(activeTransfers.size());
+        for (TransferState state : activeTransfers.values()) {
+            list.add(state.snapshot());
         }
+        return list;
+    }
+    
+    /**
+     * Registers the upload unless the ID is already taken; returns false if it is
+     */
+    public boolean registerResumableUpload(String transferId, ResumableUploadState state) {
+        return resumableUploads.putIfAbsent(transferId, state) == null;
+    }
+    
+    public ResumableUploadState getResumableUpload(String transferId) {
+        return resumableUploads.get(transferId);
     }
     
-    private void cleanupTransfer(String transferId) {
-        // Clean up after 5 seconds to allow frontend to get final status
-        new Thread(() -> {
-            try {
-                Thread.sleep(5000);
-                activeTransfers.remove(transferId);
-                speedCalculators.remove(transferId);
-                log.debug("Cleaned up transfer tracking: {}", transferId);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+    public ResumableUploadState removeResumableUpload(String transferId) {
+        return resumableUploads.remove(transferId);
+    }
+    
+    /**
+     * Hands a finished transfer to the history writer and keeps it queryable for the
+     * retention period so the frontend can fetch its final status; the reaper drops it afterwards
+     */
+    private void cleanupTransfer(String transferId, TransferState state) {
+        historyWriter.record(state);
+        retiring.add(new FinishedTransfer(transferId, state, System.nanoTime() + retentionNanos));
+    }
+    
+    @Scheduled(fixedDelayString = "${transfer.progress.reap-interval-ms:1000}")
+    public void reapFinishedTransfers() {
+        long now = System.nanoTime();
+        int reaped = 0;
+        FinishedTransfer head;
+        while ((head = retiring.peek()) != null && now - head.expiresAtNanos() >= 0) {
+            retiring.poll();
+            // A transfer id reused for a new transfer keeps the new entry
+            if (activeTransfers.remove(head.transferId(), head.state())) {
+                recentTransfers.add(head.state().snapshot());
+                reaped++;
+            }
+        }
+        if (reaped > 0) {
+            log.debug("Reaped {} finished transfers", reaped);
+        }
+        expireIdleResumableUploads(now);
+    }
+
+    /**
+     * Cancels resumable uploads whose client has sent nothing for the idle timeout and
+     * deletes their .part files
+     */
+    private void expireIdleResumableUploads(long now) {
+        for (Map.Entry<String, ResumableUploadState> entry : resumableUploads.entrySet()) {
+            ResumableUploadState resumable = entry.getValue();
+            if (now - resumable.getLastActivityNanos() >= resumableIdleTimeoutNanos
+                    && resumableUploads.remove(entry.getKey(), resumable)) {
+                log.info("Expiring idle resumable upload {} to {}", entry.getKey(), resumable.getRemotePath());
+                chunkedTransferService.removeQuietlyAsync(resumable.getSessionId(), resumable.getPartPath());
+                cancelTransfer(entry.getKey());
             }
-        }).start();
+        }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,512 @@
+package com.zorth.ssh.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control for uploads, downloads and background copy jobs.
+ * Transfers queue for a slot and are admitted in priority order - small interactive
+ * transfers before bulk ones - subject to a global cap, a per-host cap and a cap on
+ * bulk transfers that keeps slots free for interactive work. A queued transfer whose
+ * host is full does not hold up transfers to other hosts. Admitted transfers are also
+ * held to per-transfer, per-host and global bandwidth caps through {@link #throttle};
+ * all three can be changed while transfers run.
+ */
+@Slf4j
+@Service
+public class TransferScheduler {
+
+    public enum Priority {
+        INTERACTIVE,
+        BULK
+    }
+
+    private enum State {
+        QUEUED,
+        RUNNING,
+        FINISHED,
+        CANCELLED
+    }
+
+    @FunctionalInterface
+    public interface TransferJob {
+        void run() throws Exception;
+    }
+
+    /**
+     * A transfer's place in the scheduler. Closing a running ticket frees its slot.
+     */
+    public class Ticket implements AutoCloseable {
+        private final String transferId;
+        private final List<String> hosts;
+        private final Priority priority;
+        private final long sequence;
+        private final TransferJob job;
+        private final BandwidthThrottle transferThrottle = new BandwidthThrottle(perTransferBandwidth);
+        private final BandwidthThrottle[] throttles;
+        private State state = State.QUEUED;
+        // Stops a running transfer that has no progress entry to cancel, such as a browser download
+        private final CancellationToken cancellation;
+
+        private Ticket(String transferId, List<String> hosts, Priority priority, TransferJob job) {
+            this.transferId = transferId;
+            this.hosts = hosts;
+            this.priority = priority;
+            this.sequence = sequenceCounter.incrementAndGet();
+            this.job = job;
+            this.cancellation = new CancellationToken(transferId);
+            this.throttles = new BandwidthThrottle[hosts.size() + 2];
+            this.throttles[0] = transferThrottle;
+            for (int i = 0; i < hosts.size(); i++) {
+                this.throttles[i + 1] = getHostThrottle(hosts.get(i));
+            }
+            this.throttles[hosts.size() + 1] = globalThrottle;
+        }
+
+        /**
+         * Lowest of the caps that apply to this transfer, or 0 if none does
+         */
+        private long getEffectiveLimit() {
+            long limit = 0;
+            for (BandwidthThrottle throttle : throttles) {
+                long rate = throttle.getBytesPerSecond();
+                if (rate > 0 && (limit == 0 || rate < limit)) {
+                    limit = rate;
+                }
+            }
+            return limit;
+        }
+
+        public String getTransferId() {
+            return transferId;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        /**
+         * Cancelled by {@link TransferScheduler#cancel(String)}
+         */
+        public CancellationToken getCancellation() {
+            return cancellation;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+
+    private final SFTPSessionManager sessionManager;
+    private final TransferProgressTracker progressTracker;
+    private final ExecutorService jobExecutor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition admissionChanged = lock.newCondition();
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<>(
+            Comparator.comparing((Ticket ticket) -> ticket.priority).thenComparingLong(ticket -> ticket.sequence));
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    // Queued plus running tickets per host; a host's throttle is dropped when this reaches zero
+    private final Map<String, Integer> ticketsPerHost = new HashMap<>();
+    private final AtomicLong sequenceCounter = new AtomicLong();
+    private final ConcurrentMap<String, Ticket> tickets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, BandwidthThrottle> hostThrottles = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> hostLimits = new ConcurrentHashMap<>();
+    private int running;
+    private int runningBulk;
+
+    @Value("${transfer.scheduler.max-concurrent:16}")
+    private int maxConcurrent;
+
+    @Value("${transfer.scheduler.max-per-host:4}")
+    private int maxPerHost;
+
+    @Value("${transfer.scheduler.reserved-interactive-slots:2}")
+    private int reservedInteractiveSlots;
+
+    @Value("${transfer.scheduler.interactive-threshold-bytes:8388608}")
+    private long interactiveThresholdBytes;
+
+    @Value("${transfer.scheduler.per-host-bandwidth-bytes-per-second:0}")
+    private volatile long perHostBandwidth;
+
+    @Value("${transfer.scheduler.per-transfer-bandwidth-bytes-per-second:0}")
+    private long perTransferBandwidth;
+
+    private final BandwidthThrottle globalThrottle;
+
+    public TransferScheduler(SFTPSessionManager sessionManager, TransferProgressTracker progressTracker,
+                             @Value("${transfer.scheduler.global-bandwidth-bytes-per-second:0}") long globalBandwidth) {
+        this.sessionManager = sessionManager;
+        this.progressTracker = progressTracker;
+        this.globalThrottle = new BandwidthThrottle(globalBandwidth);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.jobExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "transfer-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Blocks the calling thread until the transfer is admitted. Use the returned ticket
+     * in try-with-resources so the slot is freed when the transfer ends.
+     *
+     * @param sessionIds SFTP sessions the transfer touches; each one's host is charged a slot
+     * @param sizeBytes expected size, or -1 if unknown (treated as bulk)
+     * @throws CancellationException if the transfer is cancelled while queued
+     */
+    public Ticket acquire(String transferId, List<String> sessionIds, long sizeBytes) throws InterruptedIOException {
+        Ticket ticket = enqueue(transferId, sessionIds, sizeBytes, null);
+        lock.lock();
+        try {
+            while (ticket.state == State.QUEUED) {
+                admissionChanged.await();
+            }
+            if (ticket.state == State.CANCELLED) {
+                throw new CancellationException("Transfer " + transferId + " was cancelled while queued");
+            }
+            return ticket;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelQueued(ticket);
+            throw new InterruptedIOException("Interrupted while queued for a transfer slot");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a background job; it runs on the scheduler's executor once admitted and
+     * holds its slot until {@code job} returns
+     */
+    public void submit(String transferId, List<String> sessionIds, long sizeBytes, TransferJob job) {
+        enqueue(transferId, sessionIds, sizeBytes, job);
+    }
+
+    /**
+     * Removes a queued transfer, or marks a running one as cancelled in the progress
+     * tracker and fails its next throttled write. Returns true if the transfer was known
+     * to the scheduler.
+     */
+    public boolean cancel(String transferId) {
+        Ticket ticket = tickets.get(transferId);
+        if (ticket != null) {
+            lock.lock();
+            try {
+                ticket.cancellation.cancel();
+                cancelQueued(ticket);
+            } finally {
+                lock.unlock();
+            }
+        }
+        progressTracker.cancelTransfer(transferId);
+        return ticket != null;
+    }
+
+    /**
+     * Charges {@code bytes} against the bandwidth caps of the transfer's hosts and the
+     * global cap, sleeping as needed. No-op for transfers the scheduler does not know.
+     *
+     * @throws TransferCancelledException if the transfer has been cancelled
+     */
+    public void throttle(String transferId, long bytes) throws InterruptedIOException {
+        Ticket ticket = tickets.get(transferId);
+        if (ticket != null) {
+            ticket.cancellation.throwIfCancelled();
+            BandwidthThrottle.acquire(bytes, ticket.throttles);
+        }
+    }
+
+    /**
+     * Caps the combined rate of all transfers; 0 removes the cap
+     */
+    public void setGlobalLimit(long bytesPerSecond) {
+        globalThrottle.setBytesPerSecond(bytesPerSecond);
+        log.info("Global transfer bandwidth limit set to {} B/s", bytesPerSecond);
+        publishLimits();
+    }
+
+    /**
+     * Caps the combined rate of all transfers to {@code host} ("host:port"); 0 removes
+     * the cap, and null goes back to the configured per-host default
+     */
+    public void setHostLimit(String host, Long bytesPerSecond) {
+        if (bytesPerSecond == null) {
+            hostLimits.remove(host);
+        } else {
+            hostLimits.put(host, bytesPerSecond);
+        }
+        lock.lock();
+        try {
+            getHostThrottle(host).setBytesPerSecond(bytesPerSecond != null ? bytesPerSecond : perHostBandwidth);
+            pruneHostThrottle(host);
+        } finally {
+            lock.unlock();
+        }
+        log.info("Bandwidth limit for {} set to {} B/s", host, bytesPerSecond != null ? bytesPerSecond : "default");
+        publishLimits();
+    }
+
+    /**
+     * Changes the configured limit for hosts without a limit of their own
+     */
+    public void setDefaultHostLimit(long bytesPerSecond) {
+        perHostBandwidth = bytesPerSecond;
+        hostThrottles.forEach((host, throttle) -> {
+            if (!hostLimits.containsKey(host)) {
+                throttle.setBytesPerSecond(bytesPerSecond);
+            }
+        });
+        log.info("Default per-host bandwidth limit set to {} B/s", bytesPerSecond);
+        publishLimits();
+    }
+
+    /**
+     * Caps one queued or running transfer; 0 removes the cap. Returns false if the
+     * scheduler does not know the transfer.
+     */
+    public boolean setTransferLimit(String transferId, long bytesPerSecond) {
+        Ticket ticket = tickets.get(transferId);
+        if (ticket == null) {
+            return false;
+        }
+        ticket.transferThrottle.setBytesPerSecond(bytesPerSecond);
+        progressTracker.setBandwidthLimit(transferId, ticket.getEffectiveLimit());
+        return true;
+    }
+
+    public Map<String, Object> getBandwidthLimits() {
+        Map<String, Long> hosts = new HashMap<>();
+        hostThrottles.forEach((host, throttle) -> hosts.put(host, throttle.getBytesPerSecond()));
+        Map<String, Long> transfers = new HashMap<>();
+        tickets.forEach((transferId, ticket) -> transfers.put(transferId, ticket.transferThrottle.getBytesPerSecond()));
+
+        Map<String, Object> limits = new HashMap<>();
+        limits.put("globalBytesPerSecond", globalThrottle.getBytesPerSecond());
+        limits.put("defaultPerHostBytesPerSecond", perHostBandwidth);
+        limits.put("defaultPerTransferBytesPerSecond", perTransferBandwidth);
+        limits.put("hosts", hosts);
+        limits.put("transfers", transfers);
+        return limits;
+    }
+
+    /**
+     * Wraps a stream so everything written through it is throttled under {@code transferId}
+     */
+    public OutputStream throttled(OutputStream out, String transferId) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                throttle(transferId, len);
+            }
+        };
+    }
+
+    public Map<String, Object> getStats() {
+        lock.lock();
+        try {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("running", running);
+            stats.put("runningBulk", runningBulk);
+            stats.put("queued", queue.size());
+            stats.put("queuedInteractive", queue.stream().filter(t -> t.priority == Priority.INTERACTIVE).count());
+            stats.put("runningPerHost", new HashMap<>(runningPerHost));
+            stats.put("maxConcurrent", maxConcurrent);
+            stats.put("maxPerHost", maxPerHost);
+            stats.put("globalBandwidthBytesPerSecond", globalThrottle.getBytesPerSecond());
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Ticket enqueue(String transferId, List<String> sessionIds, long sizeBytes, TransferJob job) {
+        Set<String> hosts = new LinkedHashSet<>();
+        for (String sessionId : sessionIds) {
+            hosts.add(sessionManager.getHostKey(sessionId));
+        }
+        Priority priority = sizeBytes >= 0 && sizeBytes <= interactiveThresholdBytes ? Priority.INTERACTIVE : Priority.BULK;
+
+        Ticket ticket;
+        boolean waiting;
+        lock.lock();
+        try {
+            // Built under the lock so a host's throttle cannot be pruned between lookup and counting
+            ticket = new Ticket(transferId, new ArrayList<>(hosts), priority, job);
+            for (String host : hosts) {
+                ticketsPerHost.merge(host, 1, Integer::sum);
+            }
+            tickets.put(transferId, ticket);
+            queue.add(ticket);
+            dispatch();
+            waiting = ticket.state == State.QUEUED;
+            log.debug("Queued {} transfer {} for {} ({} queued, {} running)", priority, transferId, hosts, queue.size(), running);
+        } finally {
+            lock.unlock();
+        }
+        if (waiting) {
+            progressTracker.markQueued(transferId);
+        }
+        return ticket;
+    }
+
+    private void release(Ticket ticket) {
+        lock.lock();
+        try {
+            if (ticket.state == State.RUNNING) {
+                ticket.state = State.FINISHED;
+                running--;
+                if (ticket.priority == Priority.BULK) {
+                    runningBulk--;
+                }
+                for (String host : ticket.hosts) {
+                    runningPerHost.merge(host, -1, Integer::sum);
+                    runningPerHost.remove(host, 0);
+                }
+                forgetHosts(ticket);
+                dispatch();
+            } else if (ticket.state == State.QUEUED) {
+                cancelQueued(ticket);
+            }
+        } finally {
+            lock.unlock();
+        }
+        tickets.remove(ticket.transferId, ticket);
+    }
+
+    /**
+     * Admits every queued ticket that fits, best priority first. Must hold the lock.
+     */
+    private void dispatch() {
+        if (queue.isEmpty() || running >= maxConcurrent) {
+            return;
+        }
+        List<Ticket> ordered = new ArrayList<>(queue);
+        ordered.sort(queue.comparator());
+        for (Ticket ticket : ordered) {
+            if (running >= maxConcurrent) {
+                break;
+            }
+            if (!canAdmit(ticket)) {
+                continue;
+            }
+            queue.remove(ticket);
+            ticket.state = State.RUNNING;
+            running++;
+            if (ticket.priority == Priority.BULK) {
+                runningBulk++;
+            }
+            for (String host : ticket.hosts) {
+                runningPerHost.merge(host, 1, Integer::sum);
+            }
+            progressTracker.setBandwidthLimit(ticket.transferId, ticket.getEffectiveLimit());
+            if (ticket.job != null) {
+                jobExecutor.execute(() -> runJob(ticket));
+            }
+        }
+        admissionChanged.signalAll();
+    }
+
+    private boolean canAdmit(Ticket ticket) {
+        if (ticket.priority == Priority.BULK && runningBulk >= Math.max(1, maxConcurrent - reservedInteractiveSlots)) {
+            return false;
+        }
+        for (String host : ticket.hosts) {
+            if (runningPerHost.getOrDefault(host, 0) >= maxPerHost) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void runJob(Ticket ticket) {
+        try {
+            ticket.job.run();
+        } catch (Exception e) {
+            log.error("Scheduled transfer {} failed: {}", ticket.transferId, e.getMessage());
+            progressTracker.failTransfer(ticket.transferId, e.getMessage());
+        } finally {
+            release(ticket);
+        }
+    }
+
+    /**
+     * Must hold the lock
+     */
+    private void cancelQueued(Ticket ticket) {
+        if (ticket.state == State.QUEUED) {
+            queue.remove(ticket);
+            ticket.state = State.CANCELLED;
+            tickets.remove(ticket.transferId, ticket);
+            forgetHosts(ticket);
+            admissionChanged.signalAll();
+            log.info("Cancelled queued transfer {}", ticket.transferId);
+        }
+    }
+
+    /**
+     * Called once when a ticket leaves the scheduler. Must hold the lock.
+     */
+    private void forgetHosts(Ticket ticket) {
+        for (String host : ticket.hosts) {
+            ticketsPerHost.merge(host, -1, Integer::sum);
+            if (ticketsPerHost.remove(host, 0)) {
+                pruneHostThrottle(host);
+            }
+        }
+    }
+
+    /**
+     * Drops the throttle of a host that has no tickets and no limit of its own; the
+     * next ticket for it starts from the default. Must hold the lock.
+     */
+    private void pruneHostThrottle(String host) {
+        if (!ticketsPerHost.containsKey(host) && !hostLimits.containsKey(host)) {
+            hostThrottles.remove(host);
+        }
+    }
+
+    private BandwidthThrottle getHostThrottle(String host) {
+        return hostThrottles.computeIfAbsent(host,
+                key -> new BandwidthThrottle(hostLimits.getOrDefault(key, perHostBandwidth)));
+    }
+
+    /**
+     * Reports the now effective limit of every known transfer to the progress tracker
+     */
+    private void publishLimits() {
+        tickets.forEach((transferId, ticket) -> progressTracker.setBandwidthLimit(transferId, ticket.getEffectiveLimit()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+}
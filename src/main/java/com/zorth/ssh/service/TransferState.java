@@ -0,0 +1,247 @@
+package com.zorth.ssh.service;
+
+import com.zorth.ssh.dto.TransferProgress;
+import com.zorth.ssh.dto.TransferProgress.TransferStatus;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Live state of one tracked transfer. The data path only writes counters and a
+ * nanoTime stamp; speed, ETA, percentage and formatted strings are derived when a
+ * {@link TransferProgress} snapshot is taken for publishing or for a query.
+ */
+public final class TransferState {
+
+    private static final double SMOOTHING_FACTOR = 0.3; // For exponential smoothing of the speed
+
+    private final String transferId;
+    private final String fileName;
+    private final String operation;
+    private final LocalDateTime startTime = LocalDateTime.now();
+    private final long startNanos = System.nanoTime();
+    private final TransferProgressBroadcaster broadcaster;
+    private final CancellationToken cancellation;
+
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private final AtomicReference<TransferStatus> status = new AtomicReference<>(TransferStatus.STARTING);
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private volatile long totalBytes;
+    private volatile long lastUpdateNanos = startNanos;
+    private volatile long bandwidthLimit;
+    private volatile String errorMessage;
+    private volatile long finishNanos;
+    // Where the bytes went or came from; set for transfers that go into the history
+    private volatile Long profileId;
+    private volatile String host;
+    private volatile String remotePath;
+
+    // Speed sampling; only touched while taking a snapshot
+    private long sampleBytes;
+    private long sampleNanos = startNanos;
+    private double smoothedSpeed;
+
+    TransferState(String transferId, String fileName, String operation, long totalBytes,
+                  TransferProgressBroadcaster broadcaster) {
+        this.transferId = transferId;
+        this.fileName = fileName;
+        this.operation = operation;
+        this.totalBytes = totalBytes;
+        this.broadcaster = broadcaster;
+        this.cancellation = new CancellationToken(transferId);
+    }
+
+    public String getTransferId() {
+        return transferId;
+    }
+
+    /**
+     * Records the absolute number of bytes moved so far
+     */
+    public void update(long transferred) {
+        transferredBytes.set(transferred);
+        touch();
+    }
+
+    /**
+     * Adds to the number of bytes moved, for transfers fed by several threads
+     */
+    public void add(long bytes) {
+        transferredBytes.addAndGet(bytes);
+        touch();
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public LocalDateTime getStartTime() {
+        return startTime;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public Long getProfileId() {
+        return profileId;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getRemotePath() {
+        return remotePath;
+    }
+
+    /**
+     * Time from start until the transfer finished, or until now while it runs
+     */
+    public long getElapsedMillis() {
+        long end = finishNanos != 0 ? finishNanos : System.nanoTime();
+        return (end - startNanos) / 1_000_000;
+    }
+
+    public CancellationToken getCancellation() {
+        return cancellation;
+    }
+
+    public TransferStatus getStatus() {
+        return status.get();
+    }
+
+    public long getTransferredBytes() {
+        return transferredBytes.get();
+    }
+
+    private void touch() {
+        lastUpdateNanos = System.nanoTime();
+        TransferStatus current = status.get();
+        if (current == TransferStatus.STARTING || current == TransferStatus.QUEUED) {
+            status.compareAndSet(current, TransferStatus.IN_PROGRESS);
+        }
+        markDirty();
+    }
+
+    void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+        markDirty();
+    }
+
+    void describe(Long profileId, String host, String remotePath) {
+        this.profileId = profileId;
+        this.host = host;
+        this.remotePath = remotePath;
+    }
+
+    void setBandwidthLimit(long bytesPerSecond) {
+        this.bandwidthLimit = bytesPerSecond;
+        markDirty();
+    }
+
+    /**
+     * Moves from {@code expected} to {@code next}; false if the status was something else
+     */
+    boolean transition(TransferStatus expected, TransferStatus next) {
+        if (status.compareAndSet(expected, next)) {
+            markDirty();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves to a final status unless the transfer already has one
+     */
+    boolean finish(TransferStatus finalStatus, String error) {
+        TransferStatus current;
+        do {
+            current = status.get();
+            if (isFinal(current)) {
+                return false;
+            }
+        } while (!status.compareAndSet(current, finalStatus));
+        if (error != null) {
+            errorMessage = error;
+        }
+        if (finalStatus == TransferStatus.COMPLETED && totalBytes > transferredBytes.get()) {
+            transferredBytes.set(totalBytes);
+        }
+        lastUpdateNanos = System.nanoTime();
+        finishNanos = lastUpdateNanos;
+        markDirty();
+        return true;
+    }
+
+    static boolean isFinal(TransferStatus status) {
+        return status == TransferStatus.COMPLETED || status == TransferStatus.FAILED || status == TransferStatus.CANCELLED;
+    }
+
+    /**
+     * Hands the state to the broadcaster once per flush interval, however often it changes
+     */
+    void markDirty() {
+        if (!dirty.get() && dirty.compareAndSet(false, true)) {
+            broadcaster.markDirty(this);
+        }
+    }
+
+    /**
+     * Called by the broadcaster before it takes the snapshot, so changes made while the
+     * snapshot is published mark the state dirty again
+     */
+    void clearDirty() {
+        dirty.set(false);
+    }
+
+    /**
+     * Derives a full progress record from the counters
+     */
+    public synchronized TransferProgress snapshot() {
+        long now = System.nanoTime();
+        long transferred = transferredBytes.get();
+        long total = totalBytes;
+        long elapsedNanos = now - sampleNanos;
+        if (elapsedNanos > 0 && transferred > sampleBytes) {
+            double currentSpeed = (transferred - sampleBytes) * 1e9 / elapsedNanos;
+            smoothedSpeed = smoothedSpeed == 0
+                    ? currentSpeed
+                    : SMOOTHING_FACTOR * currentSpeed + (1 - SMOOTHING_FACTOR) * smoothedSpeed;
+            sampleBytes = transferred;
+            sampleNanos = now;
+        }
+        long speed = (long) smoothedSpeed;
+
+        TransferProgress progress = new TransferProgress();
+        progress.setSessionId(transferId);
+        progress.setFileName(fileName);
+        progress.setOperation(operation);
+        progress.setTotalBytes(total);
+        progress.setStartTime(startTime);
+        progress.setStatus(status.get());
+        progress.setErrorMessage(errorMessage);
+        progress.setBandwidthLimitBytesPerSecond(bandwidthLimit);
+        progress.updateProgress(transferred);
+        progress.setLastUpdate(startTime.plusNanos(lastUpdateNanos - startNanos));
+        if (progress.getStatus() == TransferStatus.COMPLETED) {
+            progress.setPercentage(100.0);
+        }
+        progress.setSpeedBytesPerSecond(speed);
+        progress.setSpeedFormatted(TransferProgress.formatSpeed(speed));
+        if (speed > 0 && total > transferred) {
+            progress.setEstimatedRemainingSeconds((total - transferred) / speed);
+        }
+        return progress;
+    }
+}
@@ -0,0 +1,199 @@
+package com.zorth.ssh.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jcraft.jsch.ChannelShell;
+import com.jcraft.jsch.Session;
+import com.zorth.ssh.entity.SSHProfile;
+import com.zorth.ssh.service.SSHProfileService;
+import com.zorth.ssh.service.SSHService;
+import com.zorth.ssh.service.TerminalInputBatcher;
+import com.zorth.ssh.service.TerminalOutputPump;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Raw WebSocket terminal at /ws/terminal?profileId=N.
+ * Shell output is sent as binary frames without String or JSON conversion, coalesced
+ * over a short window by TerminalOutputPump. Binary frames from the client are raw keystrokes, batched by
+ * TerminalInputBatcher; text frames
+ * carry JSON control messages such as RESIZE.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BinaryTerminalWebSocketHandler extends AbstractWebSocketHandler {
+
+    private final SSHService sshService;
+    private final SSHProfileService sshProfileService;
+    private final ObjectMapper objectMapper;
+    private final TerminalOutputPump terminalOutputPump;
+    private final TerminalInputBatcher terminalInputBatcher;
+
+    private final Map<String, TerminalConnection> connections = new ConcurrentHashMap<>();
+
+    @Value("${terminal.binary.coalesce-window-ms:10}")
+    private long coalesceWindowMs;
+
+    @Value("${terminal.binary.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${terminal.binary.send-buffer-limit:1048576}")
+    private int sendBufferLimit;
+
+    @Value("${terminal.binary.backpressure-high-water-bytes:262144}")
+    private int backpressureHighWaterBytes;
+
+    private static class TerminalConnection {
+        private final ConcurrentWebSocketSessionDecorator webSocket;
+        private final Session session;
+        private final ChannelShell channel;
+
+        private TerminalConnection(ConcurrentWebSocketSessionDecorator webSocket, Session session, ChannelShell channel) {
+            this.webSocket = webSocket;
+            this.session = session;
+            this.channel = channel;
+        }
+    }
+
+    @Override
+    public void afterConnectionEstablished(@NonNull WebSocketSession webSocketSession) throws Exception {
+        ConcurrentWebSocketSessionDecorator webSocket =
+                new ConcurrentWebSocketSessionDecorator(webSocketSession, sendTimeLimitMs, sendBufferLimit);
+        Session session = null;
+        try {
+            String profileIdStr = UriComponentsBuilder.fromUri(webSocketSession.getUri()).build()
+                    .getQueryParams().getFirst("profileId");
+            if (profileIdStr == null) {
+                throw new IllegalArgumentException("profileId query parameter is required");
+            }
+            SSHProfile profile = sshProfileService.findById(Long.parseLong(profileIdStr));
+            log.info("Binary terminal connect request for profile: {} from session: {}", profile.getNickname(), webSocketSession.getId());
+
+            session = sshService.createSession(profile);
+            sshService.connectSession(session);
+            ChannelShell channel = sshService.createShellChannel(session);
+            InputStream sshOutput = channel.getInputStream();
+            OutputStream sshInput = channel.getOutputStream();
+            sshService.connectChannel(channel);
+
+            TerminalConnection connection = new TerminalConnection(webSocket, session, channel);
+            connections.put(webSocketSession.getId(), connection);
+            terminalInputBatcher.open(webSocketSession.getId(), sshInput);
+            sendControl(webSocket, Map.of("type", "CONNECTED", "message", "Connection established to " + profile.getNickname()));
+
+            startPump(connection, sshOutput, webSocketSession.getId());
+        } catch (Exception e) {
+            log.error("Error establishing binary terminal connection: ", e);
+            sshService.disconnectSession(session);
+            sendControl(webSocket, Map.of("type", "ERROR", "message", "Failed to connect: " + e.getMessage()));
+            webSocketSession.close(CloseStatus.SERVER_ERROR);
+        }
+    }
+
+    @Override
+    protected void handleBinaryMessage(@NonNull WebSocketSession webSocketSession, @NonNull BinaryMessage message) throws Exception {
+        ByteBuffer payload = message.getPayload();
+        if (payload.hasArray()) {
+            terminalInputBatcher.write(webSocketSession.getId(), payload.array(),
+                    payload.arrayOffset() + payload.position(), payload.remaining());
+        } else {
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            terminalInputBatcher.write(webSocketSession.getId(), bytes, 0, bytes.length);
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(@NonNull WebSocketSession webSocketSession, @NonNull TextMessage message) throws Exception {
+        TerminalConnection connection = connections.get(webSocketSession.getId());
+        if (connection == null) {
+            return;
+        }
+        JsonNode json = objectMapper.readTree(message.getPayload());
+        String type = json.path("type").asText();
+        if ("RESIZE".equals(type)) {
+            sshService.resizeChannel(connection.channel, json.get("cols").asInt(), json.get("rows").asInt());
+        } else if ("DISCONNECT".equals(type)) {
+            webSocketSession.close(CloseStatus.NORMAL);
+        } else {
+            log.warn("Unknown binary terminal control message type: {}", type);
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(@NonNull WebSocketSession webSocketSession, @NonNull CloseStatus status) {
+        log.info("Binary terminal session closed: {} ({})", webSocketSession.getId(), status);
+        cleanup(webSocketSession.getId());
+    }
+
+    /**
+     * Hands shell output to the shared pump. Bursts are coalesced over a short window;
+     * while the client's send buffer is above the high-water mark the pump stops reading,
+     * JSch's window fills up and the remote shell is throttled by SSH flow control.
+     */
+    private void startPump(TerminalConnection connection, InputStream in, String webSocketSessionId) {
+        terminalOutputPump.register(webSocketSessionId, connection.channel, in, new TerminalOutputPump.OutputSink() {
+            @Override
+            public void write(byte[] data, int offset, int length) throws IOException {
+                connection.webSocket.sendMessage(new BinaryMessage(Arrays.copyOfRange(data, offset, offset + length)));
+            }
+
+            @Override
+            public boolean isReady() {
+                return connection.webSocket.getBufferSize() <= backpressureHighWaterBytes;
+            }
+
+            @Override
+            public void closed(Exception error) {
+                if (error != null) {
+                    log.error("Error pumping binary terminal output for session {}: ", webSocketSessionId, error);
+                }
+                cleanup(webSocketSessionId);
+                try {
+                    connection.webSocket.close(CloseStatus.NORMAL);
+                } catch (IOException e) {
+                    log.debug("Error closing websocket {}: {}", webSocketSessionId, e.getMessage());
+                }
+            }
+        }, coalesceWindowMs);
+    }
+
+    private void sendControl(WebSocketSession webSocket, Map<String, String> message) {
+        try {
+            if (webSocket.isOpen()) {
+                webSocket.sendMessage(new TextMessage(objectMapper.writeValueAsString(message)));
+            }
+        } catch (IOException e) {
+            log.warn("Failed to send control message to {}: {}", webSocket.getId(), e.getMessage());
+        }
+    }
+
+    private void cleanup(String webSocketSessionId) {
+        terminalInputBatcher.close(webSocketSessionId);
+        TerminalConnection connection = connections.remove(webSocketSessionId);
+        if (connection != null) {
+            sshService.disconnectChannel(connection.channel);
+            sshService.disconnectSession(connection.session);
+            log.info("SSH session disconnected for binary terminal: {}", webSocketSessionId);
+        }
+    }
+}
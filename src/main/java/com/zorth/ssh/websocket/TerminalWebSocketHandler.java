@@ -6,10 +6,14 @@ import com.jcraft.jsch.Channel;
 import com.jcraft.jsch.ChannelShell;
 import com.jcraft.jsch.Session;
 import com.zorth.ssh.entity.SSHProfile;
+import com.zorth.ssh.service.IncrementalUtf8Decoder;
 import com.zorth.ssh.service.SSHProfileService;
 import com.zorth.ssh.service.SSHService;
+import com.zorth.ssh.service.TerminalInputBatcher;
+import com.zorth.ssh.service.TerminalOutputPump;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
@@ -17,8 +21,7 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -31,6 +34,10 @@ public class TerminalWebSocketHandler {
     private final SSHProfileService sshProfileService;
     private final SimpMessagingTemplate messagingTemplate;
     private final ObjectMapper objectMapper;
+    private final TerminalOutputPump terminalOutputPump;
+    private final TerminalInputBatcher terminalInputBatcher;
+
+    private static final int DECODER_BUFFER_SIZE = 8192;
 
     private final Map<String, Session> sessions = new ConcurrentHashMap<>();
     private final Map<String, Channel> channels = new ConcurrentHashMap<>();
@@ -68,6 +75,7 @@ public class TerminalWebSocketHandler {
 
             sessions.put(sessionId, session);
             channels.put(sessionId, channel);
+            terminalInputBatcher.open(sessionId, channel.getOutputStream());
 
             // Start reading from the channel
             startReadingFromChannel(channel, sessionId);
@@ -96,14 +104,8 @@ public class TerminalWebSocketHandler {
             String input = json.get("input").asText();
             String sessionId = json.get("sessionId").asText();
             
-            log.debug("Received input from session {}: {}", sessionId, input.replace("\r", "\\r").replace("\n", "\\n"));
-            
-            Channel channel = channels.get(sessionId);
-            if (channel != null && channel.isConnected()) {
-                OutputStream out = channel.getOutputStream();
-                out.write(input.getBytes("UTF-8"));
-                out.flush();
-            } else {
+            byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+            if (!terminalInputBatcher.write(sessionId, bytes, 0, bytes.length)) {
                 log.warn("No active channel found for session: {}", sessionId);
             }
         } catch (Exception e) {
@@ -111,6 +113,21 @@ public class TerminalWebSocketHandler {
         }
     }
 
+    /**
+     * Binary input path: the frame body is the raw keystroke bytes and the terminal
+     * is named by the {@code sessionId} STOMP header, so no JSON parsing is needed
+     */
+    @MessageMapping("/input-binary")
+    public void handleBinaryInput(@Payload byte[] payload, @Header("sessionId") String sessionId) {
+        try {
+            if (!terminalInputBatcher.write(sessionId, payload, 0, payload.length)) {
+                log.warn("No active channel found for session: {}", sessionId);
+            }
+        } catch (Exception e) {
+            log.error("Error handling binary input: ", e);
+        }
+    }
+
     @MessageMapping("/resize")
     public void handleResize(@Payload String payload, SimpMessageHeaderAccessor headerAccessor) {
         try {
@@ -172,34 +189,41 @@ public class TerminalWebSocketHandler {
         }
     }
 
-    private void startReadingFromChannel(Channel channel, String sessionId) {
-        new Thread(() -> {
-            log.info("Starting to read from SSH channel for session: {}", sessionId);
-            try {
-                InputStream in = channel.getInputStream();
-                byte[] buffer = new byte[4096];
-                int i;
-                while ((i = in.read(buffer)) != -1) {
-                    String output = new String(buffer, 0, i, "UTF-8");
+    private void startReadingFromChannel(Channel channel, String sessionId) throws IOException {
+        // One decoder per terminal so multibyte characters split across reads stay intact
+        IncrementalUtf8Decoder decoder = new IncrementalUtf8Decoder(DECODER_BUFFER_SIZE);
+        terminalOutputPump.register(sessionId, channel, channel.getInputStream(), new TerminalOutputPump.OutputSink() {
+            @Override
+            public void write(byte[] data, int offset, int length) {
+                sendOutput(sessionId, decoder.decode(data, offset, length));
+            }
+
+            @Override
+            public void closed(Exception error) {
+                sendOutput(sessionId, decoder.finish());
+                if (error != null) {
+                    log.error("Error reading from SSH channel for session {}: ", sessionId, error);
                     messagingTemplate.convertAndSend(
                         "/topic/terminal-" + sessionId,
-                        Map.of("type", "OUTPUT", "data", output)
+                        Map.of("type", "ERROR", "message", "Connection lost: " + error.getMessage())
                     );
                 }
-            } catch (IOException e) {
-                log.error("Error reading from SSH channel for session {}: ", sessionId, e);
-                messagingTemplate.convertAndSend(
-                    "/topic/terminal-" + sessionId,
-                    Map.of("type", "ERROR", "message", "Connection lost: " + e.getMessage())
-                );
-            } finally {
-                log.info("SSH channel reading thread ended for session: {}", sessionId);
                 cleanupSession(sessionId);
             }
-        }).start();
+        }, 0);
+    }
+
+    private void sendOutput(String sessionId, String output) {
+        if (!output.isEmpty()) {
+            messagingTemplate.convertAndSend(
+                "/topic/terminal-" + sessionId,
+                Map.of("type", "OUTPUT", "data", output)
+            );
+        }
     }
 
     private void cleanupSession(String sessionId) {
+        terminalInputBatcher.close(sessionId);
         Channel channel = channels.remove(sessionId);
         Session session = sessions.remove(sessionId);
 
@@ -0,0 +1,125 @@
+package com.zorth.ssh.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownloadRangesTest {
+
+	private static final long SIZE = 1000;
+	private static final long MTIME = 1_700_000_000L;
+	// Same instant as MTIME
+	private static final String MTIME_DATE = "Tue, 14 Nov 2023 22:13:20 GMT";
+
+	private static DownloadRanges.Plan plan(String range) {
+		return DownloadRanges.plan(range, null, SIZE, MTIME);
+	}
+
+	@Test
+	void noRangeHeaderServesFullEntity() {
+		assertThat(plan(null).isFull()).isTrue();
+	}
+
+	@Test
+	void singleRangeIsServedAsIs() {
+		DownloadRanges.Plan plan = plan("bytes=100-199");
+
+		assertThat(plan.ranges()).containsExactly(new DownloadRanges.Range(100, 199));
+		assertThat(plan.totalLength()).isEqualTo(100);
+	}
+
+	@Test
+	void openAndSuffixRangesAreResolvedAgainstFileSize() {
+		assertThat(plan("bytes=900-").ranges()).containsExactly(new DownloadRanges.Range(900, 999));
+		assertThat(plan("bytes=-100").ranges()).containsExactly(new DownloadRanges.Range(900, 999));
+		assertThat(plan("bytes=990-5000").ranges()).containsExactly(new DownloadRanges.Range(990, 999));
+	}
+
+	@Test
+	void overlappingAndAdjacentRangesAreSortedAndMerged() {
+		DownloadRanges.Plan plan = plan("bytes=500-599,0-99,50-149,150-199,700-710");
+
+		assertThat(plan.ranges()).containsExactly(
+				new DownloadRanges.Range(0, 199),
+				new DownloadRanges.Range(500, 599),
+				new DownloadRanges.Range(700, 710));
+		assertThat(plan.totalLength()).isEqualTo(200 + 100 + 11);
+	}
+
+	@Test
+	void rangesCoveringTheWholeFileServeFullEntity() {
+		assertThat(plan("bytes=0-").isFull()).isTrue();
+		assertThat(plan("bytes=0-,0-,0-,0-").isFull()).isTrue();
+		assertThat(plan("bytes=0-499,500-999").isFull()).isTrue();
+	}
+
+	@Test
+	void tooManyRangesServeFullEntity() {
+		StringBuilder header = new StringBuilder("bytes=");
+		for (int i = 0; i <= DownloadRanges.MAX_RANGES; i++) {
+			header.append(i == 0 ? "" : ",").append(i * 10).append('-').append(i * 10 + 1);
+		}
+
+		assertThat(plan(header.toString()).isFull()).isTrue();
+	}
+
+	@Test
+	void unsatisfiableRangesAreDroppedWhenOthersRemain() {
+		DownloadRanges.Plan plan = plan("bytes=2000-3000,10-19");
+
+		assertThat(plan.unsatisfiable()).isFalse();
+		assertThat(plan.ranges()).containsExactly(new DownloadRanges.Range(10, 19));
+	}
+
+	@Test
+	void onlyUnsatisfiableRangesGive416() {
+		assertThat(plan("bytes=1000-").unsatisfiable()).isTrue();
+		assertThat(plan("bytes=1000-1100,5000-").unsatisfiable()).isTrue();
+		assertThat(DownloadRanges.plan("bytes=0-", null, 0, MTIME).unsatisfiable()).isTrue();
+	}
+
+	@Test
+	void malformedRangeHeaderIsIgnored() {
+		assertThat(plan("bytes=abc").isFull()).isTrue();
+		assertThat(plan("items=0-10").isFull()).isTrue();
+		assertThat(plan("bytes=20-10").isFull()).isTrue();
+	}
+
+	@Test
+	void ifRangeWithMatchingDateAllowsRanges() {
+		DownloadRanges.Plan plan = DownloadRanges.plan("bytes=0-9", MTIME_DATE, SIZE, MTIME);
+
+		assertThat(plan.ranges()).containsExactly(new DownloadRanges.Range(0, 9));
+	}
+
+	@Test
+	void ifRangeWithOtherDateServesFullEntity() {
+		DownloadRanges.Plan plan = DownloadRanges.plan("bytes=0-9", MTIME_DATE, SIZE, MTIME + 1);
+
+		assertThat(plan.isFull()).isTrue();
+	}
+
+	@Test
+	void ifRangeEntityTagsNeverMatch() {
+		assertThat(DownloadRanges.ifRangeMatches("W/\"3e8-6553f100\"", MTIME)).isFalse();
+		assertThat(DownloadRanges.ifRangeMatches("\"3e8-6553f100\"", MTIME)).isFalse();
+	}
+
+	@Test
+	void ifRangeGarbageOrUnknownMtimeNeverMatches() {
+		assertThat(DownloadRanges.ifRangeMatches("yesterday", MTIME)).isFalse();
+		assertThat(DownloadRanges.ifRangeMatches(MTIME_DATE, 0)).isFalse();
+		assertThat(DownloadRanges.ifRangeMatches(null, MTIME)).isTrue();
+	}
+
+	@Test
+	void mergeKeepsDisjointRangesInOrder() {
+		List<DownloadRanges.Range> merged = DownloadRanges.merge(List.of(
+				new DownloadRanges.Range(30, 39), new DownloadRanges.Range(0, 9), new DownloadRanges.Range(11, 20)));
+
+		assertThat(merged).containsExactly(
+				new DownloadRanges.Range(0, 9), new DownloadRanges.Range(11, 20), new DownloadRanges.Range(30, 39));
+	}
+}
@@ -0,0 +1,91 @@
+package com.zorth.ssh.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IncrementalUtf8DecoderTest {
+
+	private static final String REPLACEMENT = "\uFFFD";
+
+	private static String decode(IncrementalUtf8Decoder decoder, byte... data) {
+		return decoder.decode(data, 0, data.length);
+	}
+
+	@Test
+	void threeByteCharacterSplitAcrossReadsIsHeldBack() {
+		IncrementalUtf8Decoder decoder = new IncrementalUtf8Decoder(16);
+		byte[] bytes = "中".getBytes(StandardCharsets.UTF_8);
+
+		assertThat(decoder.decode(bytes, 0, 1)).isEmpty();
+		assertThat(decoder.decode(bytes, 1, 1)).isEmpty();
+		assertThat(decoder.decode(bytes, 2, 1)).isEqualTo("中");
+	}
+
+	@Test
+	void fourByteCharacterSplitAcrossReadsIsHeldBack() {
+		IncrementalUtf8Decoder decoder = new IncrementalUtf8Decoder(16);
+		byte[] bytes = "a😀b".getBytes(StandardCharsets.UTF_8);
+
+		assertThat(decoder.decode(bytes, 0, 3)).isEqualTo("a");
+		assertThat(decoder.decode(bytes, 3, 3)).isEqualTo("😀b");
+	}
+
+	@Test
+	void byteAtATimeDecodesWholeText() {
+		IncrementalUtf8Decoder decoder = new IncrementalUtf8Decoder(8);
+		String text = "ls -l 目录/文件 ✓ 😀";
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+		StringBuilder decoded = new StringBuilder();
+		for (int i = 0; i < bytes.length; i++) {
+			decoded.append(decoder.decode(bytes, i, 1));
+		}
+
+		assertThat(decoded.toString()).isEqualTo(text);
+		assertThat(decoder.finish()).isEmpty();
+	}
+
+	@Test
+	void readLargerThanBufferIsDecodedInOneCall() {
+		IncrementalUtf8Decoder decoder = new IncrementalUtf8Decoder(4);
+		String text = "终端输出比缓冲区长得多 and some ASCII";
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+		assertThat(decoder.decode(bytes, 0, bytes.length)).isEqualTo(text);
+	}
+
+	@Test
+	void invalidByteIsReplaced() {
+		IncrementalUtf8Decoder decoder = new IncrementalUtf8Decoder(16);
+
+		assertThat(decode(decoder, (byte) 'a', (byte) 0xFF, (byte) 'b')).isEqualTo("a" + REPLACEMENT + "b");
+	}
+
+	@Test
+	void truncatedSequenceFollowedByAsciiIsReplaced() {
+		IncrementalUtf8Decoder decoder = new IncrementalUtf8Decoder(16);
+
+		assertThat(decode(decoder, (byte) 0xE4, (byte) 0xB8)).isEmpty();
+		assertThat(decode(decoder, (byte) 'x')).isEqualTo(REPLACEMENT + "x");
+	}
+
+	@Test
+	void strayContinuationByteIsReplacedAndDecodingRecovers() {
+		IncrementalUtf8Decoder decoder = new IncrementalUtf8Decoder(16);
+
+		assertThat(decode(decoder, (byte) 0x80)).isEqualTo(REPLACEMENT);
+		assertThat(decoder.decode("中".getBytes(StandardCharsets.UTF_8), 0, 3)).isEqualTo("中");
+	}
+
+	@Test
+	void finishFlushesDanglingSequenceAsReplacement() {
+		IncrementalUtf8Decoder decoder = new IncrementalUtf8Decoder(16);
+
+		assertThat(decode(decoder, (byte) 'a', (byte) 0xE4, (byte) 0xB8)).isEqualTo("a");
+		assertThat(decoder.finish()).isEqualTo(REPLACEMENT);
+		assertThat(decode(decoder, (byte) 'b')).isEqualTo("b");
+	}
+}
@@ -0,0 +1,101 @@
+package com.zorth.ssh.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResumableUploadStateTest {
+
+	private static TransferProgressTracker.ResumableUploadState state(long totalBytes) {
+		return new TransferProgressTracker.ResumableUploadState(1L, "session", "/data/file", "/data/file.part", totalBytes);
+	}
+
+	@Test
+	void emptyUploadIsMissingEverything() {
+		TransferProgressTracker.ResumableUploadState state = state(100);
+
+		assertThat(state.getReceivedBytes()).isZero();
+		assertThat(state.getMissingRanges()).containsExactly(new long[]{0, 100});
+		assertThat(state.isComplete()).isFalse();
+	}
+
+	@Test
+	void overlappingRangesMerge() {
+		TransferProgressTracker.ResumableUploadState state = state(100);
+
+		state.addRange(10, 40);
+		state.addRange(30, 60);
+		state.addRange(5, 15);
+
+		assertThat(state.getReceivedRanges()).containsExactly(new long[]{5, 60});
+		assertThat(state.getReceivedBytes()).isEqualTo(55);
+		assertThat(state.getMissingRanges()).containsExactly(new long[]{0, 5}, new long[]{60, 100});
+	}
+
+	@Test
+	void adjacentRangesMerge() {
+		TransferProgressTracker.ResumableUploadState state = state(30);
+
+		state.addRange(0, 10);
+		state.addRange(20, 30);
+		state.addRange(10, 20);
+
+		assertThat(state.getReceivedRanges()).containsExactly(new long[]{0, 30});
+		assertThat(state.getMissingRanges()).isEmpty();
+		assertThat(state.isComplete()).isTrue();
+	}
+
+	@Test
+	void outOfOrderRangesLeaveGapsUntilFilled() {
+		TransferProgressTracker.ResumableUploadState state = state(100);
+
+		state.addRange(80, 100);
+		state.addRange(20, 40);
+		state.addRange(50, 60);
+
+		assertThat(state.getReceivedRanges())
+				.containsExactly(new long[]{20, 40}, new long[]{50, 60}, new long[]{80, 100});
+		assertThat(state.getMissingRanges())
+				.containsExactly(new long[]{0, 20}, new long[]{40, 50}, new long[]{60, 80});
+
+		state.addRange(0, 90);
+
+		assertThat(state.getReceivedRanges()).containsExactly(new long[]{0, 100});
+		assertThat(state.isComplete()).isTrue();
+	}
+
+	@Test
+	void rangeSpanningSeveralRangesSwallowsThem() {
+		TransferProgressTracker.ResumableUploadState state = state(100);
+
+		state.addRange(10, 20);
+		state.addRange(30, 40);
+		state.addRange(50, 60);
+		state.addRange(15, 55);
+
+		assertThat(state.getReceivedRanges()).containsExactly(new long[]{10, 60});
+		assertThat(state.getReceivedBytes()).isEqualTo(50);
+	}
+
+	@Test
+	void resentAndEmptyRangesChangeNothing() {
+		TransferProgressTracker.ResumableUploadState state = state(100);
+
+		state.addRange(10, 20);
+		state.addRange(10, 20);
+		state.addRange(12, 18);
+		state.addRange(50, 50);
+		state.addRange(70, 60);
+
+		List<long[]> received = state.getReceivedRanges();
+		assertThat(received).containsExactly(new long[]{10, 20});
+		assertThat(state.getReceivedBytes()).isEqualTo(10);
+	}
+
+	@Test
+	void zeroLengthUploadIsComplete() {
+		assertThat(state(0).isComplete()).isTrue();
+	}
+}
@@ -0,0 +1,35 @@
+package com.zorth.ssh.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SFTPTreeOperationPathTest {
+
+	@Test
+	void spellingsOfRootNormalizeToRoot() {
+		for (String path : new String[]{"/", "//", "/.", "/./", "/..", "/tmp/..", "/a/b/../../", "///./.."}) {
+			assertThat(SFTPTreeOperationService.normalizePath(path)).as(path).isEqualTo("/");
+		}
+	}
+
+	@Test
+	void spellingsOfHomeNormalizeToEmpty() {
+		for (String path : new String[]{"", ".", "./", "a/..", "./a/../."}) {
+			assertThat(SFTPTreeOperationService.normalizePath(path)).as(path).isEmpty();
+		}
+	}
+
+	@Test
+	void slashesAndDotsAreCollapsed() {
+		assertThat(SFTPTreeOperationService.normalizePath("/var//log/./app/")).isEqualTo("/var/log/app");
+		assertThat(SFTPTreeOperationService.normalizePath("/var/log/../tmp")).isEqualTo("/var/tmp");
+		assertThat(SFTPTreeOperationService.normalizePath("data//x/")).isEqualTo("data/x");
+	}
+
+	@Test
+	void relativePathKeepsLeadingParentSegments() {
+		assertThat(SFTPTreeOperationService.normalizePath("..")).isEqualTo("..");
+		assertThat(SFTPTreeOperationService.normalizePath("a/../../b")).isEqualTo("../b");
+	}
+}
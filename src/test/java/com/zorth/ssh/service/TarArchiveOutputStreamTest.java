@@ -0,0 +1,208 @@
+package com.zorth.ssh.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TarArchiveOutputStreamTest {
+
+	private static final int BLOCK = 512;
+	private static final long MTIME = 1_700_000_000L;
+
+	private static String field(byte[] archive, int headerOffset, int offset, int length) {
+		int start = headerOffset + offset;
+		int end = start;
+		while (end < start + length && archive[end] != 0) {
+			end++;
+		}
+		return new String(archive, start, end - start, StandardCharsets.UTF_8);
+	}
+
+	private static long octal(byte[] archive, int headerOffset, int offset, int length) {
+		return Long.parseLong(field(archive, headerOffset, offset, length).trim(), 8);
+	}
+
+	private static void assertValidChecksum(byte[] archive, int headerOffset) {
+		long sum = 0;
+		for (int i = 0; i < BLOCK; i++) {
+			sum += i >= 148 && i < 156 ? ' ' : archive[headerOffset + i] & 0xFF;
+		}
+		assertThat(octal(archive, headerOffset, 148, 7)).isEqualTo(sum);
+	}
+
+	private static boolean allZero(byte[] archive, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (archive[i] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Test
+	void shortFileIsOneHeaderAndPaddedData() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TarArchiveOutputStream tar = new TarArchiveOutputStream(bytes);
+		byte[] data = "hello".getBytes(StandardCharsets.US_ASCII);
+
+		tar.putEntry("dir/hello.txt", false, data.length, 0640, MTIME);
+		tar.write(data);
+		tar.closeEntry();
+		tar.finish();
+		byte[] archive = bytes.toByteArray();
+
+		assertThat(archive).hasSize(BLOCK + BLOCK + 2 * BLOCK);
+		assertThat(field(archive, 0, 0, 100)).isEqualTo("dir/hello.txt");
+		assertThat(octal(archive, 0, 100, 8)).isEqualTo(0640);
+		assertThat(octal(archive, 0, 124, 12)).isEqualTo(data.length);
+		assertThat(octal(archive, 0, 136, 12)).isEqualTo(MTIME);
+		assertThat(archive[156]).isEqualTo((byte) '0');
+		assertThat(field(archive, 0, 257, 6)).isEqualTo("ustar");
+		assertValidChecksum(archive, 0);
+		assertThat(Arrays.copyOfRange(archive, BLOCK, BLOCK + data.length)).isEqualTo(data);
+		assertThat(allZero(archive, BLOCK + data.length, archive.length)).isTrue();
+	}
+
+	@Test
+	void dataIsPaddedToWholeBlocks() throws IOException {
+		for (int size : new int[]{0, 1, BLOCK - 1, BLOCK, BLOCK + 1}) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			TarArchiveOutputStream tar = new TarArchiveOutputStream(bytes);
+
+			tar.putEntry("file", false, size, 0644, MTIME);
+			tar.write(new byte[size]);
+			tar.closeEntry();
+
+			int dataBlocks = (size + BLOCK - 1) / BLOCK;
+			assertThat(bytes.size()).as("size %d", size).isEqualTo(BLOCK + dataBlocks * BLOCK);
+		}
+	}
+
+	@Test
+	void directoryGetsTrailingSlashAndNoData() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TarArchiveOutputStream tar = new TarArchiveOutputStream(bytes);
+
+		tar.putEntry("logs", true, 4096, 0755, MTIME);
+		tar.closeEntry();
+		byte[] archive = bytes.toByteArray();
+
+		assertThat(archive).hasSize(BLOCK);
+		assertThat(field(archive, 0, 0, 100)).isEqualTo("logs/");
+		assertThat(octal(archive, 0, 124, 12)).isZero();
+		assertThat(archive[156]).isEqualTo((byte) '5');
+	}
+
+	@Test
+	void longNameIsCarriedInPaxHeader() throws IOException {
+		String name = "deep/" + "x".repeat(150) + "/file.txt";
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TarArchiveOutputStream tar = new TarArchiveOutputStream(bytes);
+
+		tar.putEntry(name, false, 0, 0644, MTIME);
+		tar.closeEntry();
+		byte[] archive = bytes.toByteArray();
+
+		String record = "path=" + name + "\n";
+		String expected = (record.length() + 4) + " " + record;
+		assertThat(archive[156]).isEqualTo((byte) 'x');
+		assertValidChecksum(archive, 0);
+		assertThat(octal(archive, 0, 124, 12)).isEqualTo(expected.length());
+		assertThat(new String(archive, BLOCK, expected.length(), StandardCharsets.UTF_8)).isEqualTo(expected);
+		assertThat(allZero(archive, BLOCK + expected.length(), 2 * BLOCK)).isTrue();
+
+		int entryHeader = 2 * BLOCK;
+		assertThat(archive[entryHeader + 156]).isEqualTo((byte) '0');
+		assertThat(field(archive, entryHeader, 0, 100)).isEqualTo(name.substring(0, 100));
+		assertValidChecksum(archive, entryHeader);
+		assertThat(archive).hasSize(3 * BLOCK);
+	}
+
+	@Test
+	void paxRecordLengthCountsItsOwnDigitsAcrossADigitBoundary() throws IOException {
+		// "LEN path=NAME\n" with a 991 byte name: 998 bytes without LEN, so LEN needs four digits
+		String name = "n".repeat(991);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TarArchiveOutputStream tar = new TarArchiveOutputStream(bytes);
+
+		tar.putEntry(name, false, 0, 0644, MTIME);
+		tar.closeEntry();
+		byte[] archive = bytes.toByteArray();
+
+		int recordLength = (int) octal(archive, 0, 124, 12);
+		String record = new String(archive, BLOCK, recordLength, StandardCharsets.UTF_8);
+		assertThat(record).startsWith("1002 path=").endsWith(name + "\n");
+		assertThat(recordLength).isEqualTo(1002);
+	}
+
+	@Test
+	void sizeOverEightGibIsCarriedInPaxHeader() throws IOException {
+		long size = 10L * 1024 * 1024 * 1024;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TarArchiveOutputStream tar = new TarArchiveOutputStream(bytes);
+
+		tar.putEntry("disk.img", false, size, 0600, MTIME);
+		byte[] archive = bytes.toByteArray();
+
+		String record = "size=" + size + "\n";
+		String expected = (record.length() + 3) + " " + record;
+		assertThat(archive[156]).isEqualTo((byte) 'x');
+		assertThat(new String(archive, BLOCK, expected.length(), StandardCharsets.UTF_8)).isEqualTo(expected);
+
+		int entryHeader = 2 * BLOCK;
+		assertThat(archive).hasSize(3 * BLOCK);
+		assertThat(field(archive, entryHeader, 0, 100)).isEqualTo("disk.img");
+		// The ustar field cannot hold the size, readers take it from the pax record
+		assertThat(octal(archive, entryHeader, 124, 12)).isZero();
+		assertValidChecksum(archive, entryHeader);
+	}
+
+	@Test
+	void largestOctalSizeNeedsNoPaxHeader() throws IOException {
+		long size = 077777777777L;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TarArchiveOutputStream tar = new TarArchiveOutputStream(bytes);
+
+		tar.putEntry("edge.bin", false, size, 0644, MTIME);
+		byte[] archive = bytes.toByteArray();
+
+		assertThat(archive).hasSize(BLOCK);
+		assertThat(archive[156]).isEqualTo((byte) '0');
+		assertThat(octal(archive, 0, 124, 12)).isEqualTo(size);
+	}
+
+	@Test
+	void writesBeyondDeclaredSizeAreRejected() throws IOException {
+		TarArchiveOutputStream tar = new TarArchiveOutputStream(new ByteArrayOutputStream());
+		tar.putEntry("file", false, 2, 0644, MTIME);
+
+		assertThatThrownBy(() -> tar.write(new byte[3])).isInstanceOf(IOException.class);
+	}
+
+	@Test
+	void closingShortEntryIsRejected() throws IOException {
+		TarArchiveOutputStream tar = new TarArchiveOutputStream(new ByteArrayOutputStream());
+		tar.putEntry("file", false, 2, 0644, MTIME);
+		tar.write(1);
+
+		assertThatThrownBy(tar::closeEntry).isInstanceOf(IOException.class);
+	}
+
+	@Test
+	void finishWritesEndMarkerOnce() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TarArchiveOutputStream tar = new TarArchiveOutputStream(bytes);
+
+		tar.finish();
+		tar.close();
+
+		assertThat(bytes.size()).isEqualTo(2 * BLOCK);
+		assertThat(allZero(bytes.toByteArray(), 0, bytes.size())).isTrue();
+	}
+}